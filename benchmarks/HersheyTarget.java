@@ -0,0 +1,108 @@
+import bench.Target;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ *  Default package side of the benchmark bridge (see bench.Target).  Created by reflection, so it
+ *  needs a public no-arg constructor.
+ */
+public class HersheyTarget implements Target {
+  private final HersheyFont font;
+  private final HersheyView view;
+  private byte[]            binary;
+  private boolean           scrub;
+
+  public HersheyTarget () throws IOException {
+    font = parse(true);
+    view = new HersheyView(font);
+  }
+
+  @Override
+  public HersheyFont parse (boolean decodeAll) throws IOException {
+    HersheyFont font = HersheyFont.open(Arrays.asList("hershey.txt"), "ascii.txt");
+    if (decodeAll) {
+      for (int ii = 0; ii < font.glyphCount(); ii++) {
+        font.getVertices(ii);
+      }
+    }
+    return font;
+  }
+
+  @Override
+  public Object readBinary () throws IOException {
+    if (binary == null) {
+      File file = File.createTempFile("hershey", ".bin");
+      try {
+        font.writeBinary(file);
+        binary = Files.readAllBytes(file.toPath());
+      } finally {
+        file.delete();
+      }
+    }
+    return HersheyFont.readBinary(ByteBuffer.wrap(binary));
+  }
+
+  @Override
+  public int glyphCount () {
+    return font.glyphCount();
+  }
+
+  @Override
+  public String[] getFamilies () {
+    return font.getFamilies().keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public Object getVectors (int glyph) {
+    return font.getVectors(glyph);
+  }
+
+  @Override
+  public Object[] getFamilyVectors (String family) {
+    int[] glyphs = font.getGlyphTable(family);
+    Object[] vectors = new Object[glyphs.length];
+    for (int ii = 0; ii < glyphs.length; ii++) {
+      if (glyphs[ii] >= 0) {
+        vectors[ii] = font.getVectors(glyphs[ii]);
+      }
+    }
+    return vectors;
+  }
+
+  @Override
+  public void export (String family, String format, OutputStream out) throws IOException {
+    FontExporter.getFormat(format).write(font, family, font.getFamilies().get(family), out);
+  }
+
+  @Override
+  public void setView (int width, int height, int zoom, boolean overlays, boolean scrub) {
+    view.setSize(width, height);
+    view.setZoom(Integer.toString(zoom));
+    view.showGrid(overlays);
+    view.showOrigin(overlays);
+    view.showLeftRight(overlays);
+    this.scrub = scrub;
+  }
+
+  @Override
+  public void paint (Graphics2D g, int glyph) {
+    view.setGlyph(glyph, scrub);
+    view.paint(g);
+  }
+
+  @Override
+  public Object renderThumbnails (String family) {
+    return new GlyphAtlas(font, 1).getIcons(family);
+  }
+
+  @Override
+  public void drawThumbnail (Graphics2D g, int glyph) {
+    GlyphAtlas.drawThumbnail(g, GlyphDetail.get(font).getPath(glyph, 1), 0, 0);
+  }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *  Runs the benchmarks with the usual JMH command line options, but by default also adds the gc
+ *  profiler (allocation rate and bytes allocated per operation) and writes JSON results to
+ *  jmh-result.json, so runs of different versions can be compared with any JMH result viewer.
+ *  For example:
+ *  <pre>
+ *    java -jar target/benchmarks.jar                     all benchmarks
+ *    java -jar target/benchmarks.jar Paint -p zoom=64    one class, one zoom level
+ *    java -jar target/benchmarks.jar -rff v2.json        results to another file
+ *  </pre>
+ */
+public class BenchmarkMain {
+  public static void main (String[] args) throws Exception {
+    CommandLineOptions cmd;
+    try {
+      cmd = new CommandLineOptions(args);
+    } catch (CommandLineOptionException ex) {
+      System.err.println("Error parsing command line: " + ex.getMessage());
+      System.exit(1);
+      return;
+    }
+    if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers() ||
+        cmd.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    ChainedOptionsBuilder opts = new OptionsBuilder().parent(cmd);
+    if (cmd.getProfilers().isEmpty()) {
+      opts.addProfiler(GCProfiler.class);
+    }
+    if (!cmd.getResultFormat().hasValue()) {
+      opts.resultFormat(ResultFormatType.JSON);
+    }
+    if (!cmd.getResult().hasValue()) {
+      opts.result("jmh-result.json");
+    }
+    new Runner(opts.build()).run();
+  }
+}
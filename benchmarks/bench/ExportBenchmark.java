@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Exporting one family in each format to a stream that discards its output, so only encoding
+ *  and formatting are measured
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+  @Param({"txt", "svg", "h", "hfam"})
+  public String format;
+
+  @Param({"Roman Simplex", "Gothic German Triplex"})
+  public String family;
+
+  private Target        target;
+  private CountingSink  sink = new CountingSink();
+
+  /**
+   *  Discards bytes, but counts them so the export can't be optimized away
+   */
+  private static class CountingSink extends OutputStream {
+    private long count;
+
+    @Override
+    public void write (int b) {
+      count++;
+    }
+
+    @Override
+    public void write (byte[] buf, int off, int len) {
+      count += len;
+    }
+  }
+
+  @Setup
+  public void setup () {
+    target = Targets.get();
+  }
+
+  @Benchmark
+  public long export () throws IOException {
+    sink.count = 0;
+    target.export(family, format, sink);
+    return sink.count;
+  }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Painting the 800 x 800 glyph view into an offscreen image at each zoom level.  paintSame repaints
+ *  one glyph (as when the window is uncovered) and paintSweep steps to the next glyph on every call
+ *  (as when the slider is dragged), so it includes transforming each glyph to view coordinates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class PaintBenchmark {
+  @Param({"8", "16", "32", "64"})
+  public int zoom;
+
+  @Param({"false", "true"})
+  public boolean overlays;
+
+  @Param({"false", "true"})
+  public boolean scrub;
+
+  private Target        target;
+  private BufferedImage image;
+  private Graphics2D    g2;
+  private int           glyph, count;
+
+  @Setup
+  public void setup () {
+    target = Targets.get();
+    count = target.glyphCount();
+    image = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB);
+    g2 = image.createGraphics();
+    target.setView(image.getWidth(), image.getHeight(), zoom, overlays, scrub);
+  }
+
+  @TearDown
+  public void tearDown () {
+    g2.dispose();
+  }
+
+  @Benchmark
+  public BufferedImage paintSame () {
+    target.paint(g2, 0);
+    return image;
+  }
+
+  @Benchmark
+  public BufferedImage paintSweep () {
+    glyph = glyph + 1 < count ? glyph + 1 : 0;
+    target.paint(g2, glyph);
+    return image;
+  }
+}
@@ -0,0 +1,41 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Loading the font: indexing hershey.txt and ascii.txt, the same plus decoding every glyph (the
+ *  work the original constructor did), and loading the compiled binary form
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+  private Target target;
+
+  @Setup
+  public void setup () throws IOException {
+    target = Targets.get();
+    target.readBinary();
+  }
+
+  @Benchmark
+  public Object parseIndex () throws IOException {
+    return target.parse(false);
+  }
+
+  @Benchmark
+  public Object parseDecodeAll () throws IOException {
+    return target.parse(true);
+  }
+
+  @Benchmark
+  public Object readBinary () throws IOException {
+    return target.readBinary();
+  }
+}
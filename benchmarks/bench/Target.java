@@ -0,0 +1,63 @@
+package bench;
+
+import java.awt.Graphics2D;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ *  Operations measured by the benchmarks.  The application classes are in the default package, which
+ *  JMH's generated code can't import, so they're reached through this interface and implemented by
+ *  the default package class HersheyTarget.  Font and view state is held by the implementation.
+ */
+public interface Target {
+  /**
+   *  Parse hershey.txt and ascii.txt from the classpath into a new font
+   *  @param decodeAll also decode every glyph's vertices (the original constructor parsed everything up front)
+   */
+  Object parse (boolean decodeAll) throws IOException;
+
+  /**
+   *  Load a new font from the compiled binary form of the shared font
+   */
+  Object readBinary () throws IOException;
+
+  int glyphCount ();
+
+  String[] getFamilies ();
+
+  /**
+   *  Get one glyph's vectors as Line2D objects
+   */
+  Object getVectors (int glyph);
+
+  /**
+   *  Get the vectors of all 96 glyphs of a family
+   */
+  Object[] getFamilyVectors (String family);
+
+  /**
+   *  Export a family to out
+   *  @param format export format name or file extension
+   */
+  void export (String family, String format, OutputStream out) throws IOException;
+
+  /**
+   *  Set up the view for offscreen painting
+   */
+  void setView (int width, int height, int zoom, boolean overlays, boolean scrub);
+
+  /**
+   *  Select a glyph and paint the view into g
+   */
+  void paint (Graphics2D g, int glyph);
+
+  /**
+   *  Render the thumbnail sprite sheet for a family into a new, empty atlas
+   */
+  Object renderThumbnails (String family);
+
+  /**
+   *  Draw one glyph thumbnail
+   */
+  void drawThumbnail (Graphics2D g, int glyph);
+}
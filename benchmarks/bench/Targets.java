@@ -0,0 +1,24 @@
+package bench;
+
+/**
+ *  Creates the Target implementation from the default package
+ */
+final class Targets {
+  private static Target target;
+
+  private Targets () {}
+
+  /**
+   *  Get the shared Target (the font is parsed once per benchmark JVM)
+   */
+  static synchronized Target get () {
+    if (target == null) {
+      try {
+        target = (Target) Class.forName("HersheyTarget").getConstructor().newInstance();
+      } catch (ReflectiveOperationException ex) {
+        throw new IllegalStateException("Unable to create HersheyTarget", ex);
+      }
+    }
+    return target;
+  }
+}
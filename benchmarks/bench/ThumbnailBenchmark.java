@@ -0,0 +1,54 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Thumbnail rendering for the "Find Glyph" menus: a whole family's sprite sheet, and one glyph
+ *  thumbnail drawn into a cell sized image
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ThumbnailBenchmark {
+  @Param({"Roman Simplex", "Gothic German Triplex"})
+  public String family;
+
+  private Target        target;
+  private BufferedImage cell;
+  private Graphics2D    g2;
+  private int           glyph, count;
+
+  @Setup
+  public void setup () {
+    target = Targets.get();
+    count = target.glyphCount();
+    cell = new BufferedImage(24, 26, BufferedImage.TYPE_INT_RGB);
+    g2 = cell.createGraphics();
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+  }
+
+  @TearDown
+  public void tearDown () {
+    g2.dispose();
+  }
+
+  @Benchmark
+  public Object renderSheet () {
+    return target.renderThumbnails(family);
+  }
+
+  @Benchmark
+  public BufferedImage drawThumbnail () {
+    glyph = glyph + 1 < count ? glyph + 1 : 0;
+    target.drawThumbnail(g2, glyph);
+    return cell;
+  }
+}
@@ -0,0 +1,45 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Building Line2D vectors for one glyph (cycling through all of them) and for a whole family
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorBenchmark {
+  /**
+   *  Family parameter, kept in its own state so only getFamilyVectors() runs once per family
+   */
+  @State(Scope.Benchmark)
+  public static class Family {
+    @Param({"Roman Simplex", "Gothic German Triplex"})
+    public String family;
+  }
+
+  private Target  target;
+  private int     glyph, count;
+
+  @Setup
+  public void setup () {
+    target = Targets.get();
+    count = target.glyphCount();
+  }
+
+  @Benchmark
+  public Object getVectors () {
+    glyph = glyph + 1 < count ? glyph + 1 : 0;
+    return target.getVectors(glyph);
+  }
+
+  @Benchmark
+  public Object[] getFamilyVectors (Family family) {
+    return target.getFamilyVectors(family.family);
+  }
+}
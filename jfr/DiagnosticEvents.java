@@ -0,0 +1,170 @@
+import jdk.jfr.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ *  JDK Flight Recorder events for the stages timed by Diagnostics, one event type per stage.  This is
+ *  the only class that uses jdk.jfr, so it's kept in its own source folder, which the build compiles
+ *  only on JDK 11 or later, and Diagnostics loads it by name.  The rest of the program still builds
+ *  for, and runs on, Java 8.  An event begins when its stage starts and ends when it finishes, so
+ *  JFR's own start time and duration are the stage's.  No event is created for a stage whose event
+ *  type isn't enabled.
+ */
+class DiagnosticEvents implements Diagnostics.Recorder {
+  private final EventType[] types = new EventType[Diagnostics.Stage.values().length];
+  private Recording         recording;
+
+  @Category("HersheyView")
+  @StackTrace(false)
+  abstract static class StageEvent extends Event {
+    @Label("Size")
+    long    size;
+
+    @Label("Detail")
+    String  detail;
+  }
+
+  @Name("hersheyview.FontLoad")
+  @Label("Font Load")
+  @Description("Font loaded; size is the number of glyphs")
+  static class FontLoad extends StageEvent {
+  }
+
+  @Name("hersheyview.Paint")
+  @Label("Paint")
+  @Description("Main view repainted")
+  static class Paint extends StageEvent {
+  }
+
+  @Name("hersheyview.Vectors")
+  @Label("Get Vectors")
+  @Description("Glyph converted to line segments; size is the number of segments")
+  static class Vectors extends StageEvent {
+  }
+
+  @Name("hersheyview.Thumbnails")
+  @Label("Thumbnails")
+  @Description("Family thumbnail sheet rendered; size is the number of glyphs")
+  static class Thumbnails extends StageEvent {
+  }
+
+  @Name("hersheyview.Export")
+  @Label("Export")
+  @Description("Family exported; size is the number of bytes written")
+  static class Export extends StageEvent {
+  }
+
+  @Name("hersheyview.FontReload")
+  @Label("Font Reload")
+  @Description("Font reloaded from edited sources; size is the number of changed glyphs")
+  static class FontReload extends StageEvent {
+  }
+
+  DiagnosticEvents () {
+    if (!FlightRecorder.isAvailable()) {
+      throw new IllegalStateException("Flight Recorder isn't available");
+    }
+    for (Diagnostics.Stage stage : Diagnostics.Stage.values()) {
+      types[stage.ordinal()] = EventType.getEventType(eventClass(stage));
+    }
+  }
+
+  private static Class<? extends StageEvent> eventClass (Diagnostics.Stage stage) {
+    switch (stage) {
+      case FONT_LOAD:
+        return FontLoad.class;
+      case PAINT:
+        return Paint.class;
+      case VECTORS:
+        return Vectors.class;
+      case THUMBNAILS:
+        return Thumbnails.class;
+      case FONT_RELOAD:
+        return FontReload.class;
+      default:
+        return Export.class;
+    }
+  }
+
+  public Object begin (Diagnostics.Stage stage) {
+    if (!types[stage.ordinal()].isEnabled()) {
+      return null;
+    }
+    StageEvent event;
+    switch (stage) {
+      case FONT_LOAD:
+        event = new FontLoad();
+        break;
+      case PAINT:
+        event = new Paint();
+        break;
+      case VECTORS:
+        event = new Vectors();
+        break;
+      case THUMBNAILS:
+        event = new Thumbnails();
+        break;
+      case FONT_RELOAD:
+        event = new FontReload();
+        break;
+      default:
+        event = new Export();
+        break;
+    }
+    event.begin();
+    return event;
+  }
+
+  public void commit (Object started, long size, String detail) {
+    StageEvent event = (StageEvent) started;
+    event.end();
+    if (event.shouldCommit()) {
+      event.size = size;
+      event.detail = detail;
+      event.commit();
+    }
+  }
+
+  /**
+   *  Start a recording with the JDK's default settings, which also enable these events
+   *  @param destination file Flight Recorder writes when the JVM exits, or null to only save it with
+   *  stopRecording()
+   */
+  public synchronized void startRecording (File destination) throws IOException {
+    if (recording == null) {
+      try {
+        recording = new Recording(Configuration.getConfiguration("default"));
+      } catch (IOException | ParseException ex) {
+        ex.printStackTrace();
+        recording = new Recording();
+      }
+      recording.setName("HersheyView");
+      if (destination != null) {
+        // Flight Recorder's own shutdown hook writes it, after any events committed during shutdown
+        recording.setDestination(destination.toPath());
+        recording.setDumpOnExit(true);
+      }
+      recording.start();
+    }
+  }
+
+  /**
+   *  Stop the recording and save it
+   *  @param file file to write, or null to discard the recording
+   */
+  public synchronized void stopRecording (File file) throws IOException {
+    if (recording != null) {
+      try {
+        recording.stop();
+        if (file != null) {
+          recording.dump(file.toPath());
+        }
+      } finally {
+        recording.close();
+        recording = null;
+      }
+    }
+  }
+}
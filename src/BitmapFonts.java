@@ -0,0 +1,492 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *  Rasterizes font families into bitmap fonts for small displays.  Each combination of family, pixel
+ *  height and stroke width is written as a BDF font, a C header of packed 1 bit bitmaps, and a PNG
+ *  sprite sheet with a JSON file of metrics.  Pixel height is the height of the 32 unit Hershey em, as
+ *  in the render service, and glyphs are placed on the family's baseline (see GlyphMetrics).
+ *  <p>
+ *  Glyphs are stroked with Java2D like the viewer, using the level of detail geometry for the pixel
+ *  scale, into a grayscale buffer with antialiasing off so every line leaves pixels.  All families, sizes
+ *  and glyphs are rendered in parallel on a fork-join pool, each worker thread reusing one render
+ *  buffer.  Every glyph is rendered on its own and results are collected by index, so the output is
+ *  the same whatever the number of threads.
+ */
+class BitmapFonts {
+  private static final int  COLUMNS = 16;               // Sprite sheet columns
+  private final HersheyFont font;
+  private final ThreadLocal<RenderBuffer> buffers = ThreadLocal.withInitial(RenderBuffer::new);
+
+  BitmapFonts (HersheyFont font) {
+    this.font = font;
+  }
+
+  /**
+   *  One glyph's bitmap, trimmed to its ink.  xOff and yOff locate the top left pixel relative to the
+   *  glyph's origin on the baseline, with y down.
+   */
+  static class Bitmap {
+    final int     width, height, xOff, yOff, advance;
+    final byte[]  pixels;           // 1 for ink, row by row
+
+    Bitmap (int width, int height, int xOff, int yOff, int advance, byte[] pixels) {
+      this.width = width;
+      this.height = height;
+      this.xOff = xOff;
+      this.yOff = yOff;
+      this.advance = advance;
+      this.pixels = pixels;
+    }
+
+    boolean get (int x, int y) {
+      return pixels[y * width + x] != 0;
+    }
+  }
+
+  /**
+   *  A family rasterized at one size: 96 glyphs for ASCII 0x20 - 0x7F (null where the family has none)
+   */
+  static class Face {
+    final String    family;
+    final int       pixels;
+    final float     stroke;
+    final int       ascent, descent;          // Pixels above and below the baseline
+    final Bitmap[]  glyphs = new Bitmap[96];
+
+    Face (String family, int pixels, float stroke, int ascent, int descent) {
+      this.family = family;
+      this.pixels = pixels;
+      this.stroke = stroke;
+      this.ascent = ascent;
+      this.descent = descent;
+    }
+
+    /**
+     *  Base name for output files, such as "roman_simplex_16_1.5"
+     */
+    String getName () {
+      return FontExporter.getIdentifier(family) + "_" + pixels + "_" + formatStroke(stroke);
+    }
+  }
+
+  /**
+   *  Grayscale image and graphics reused for every glyph a thread renders, grown when a glyph needs more
+   *  room
+   */
+  private static class RenderBuffer {
+    private BufferedImage image;
+    private Graphics2D    g2;
+
+    Graphics2D get (int width, int height) {
+      if (image == null || image.getWidth() < width || image.getHeight() < height) {
+        if (g2 != null) {
+          g2.dispose();
+        }
+        image = new BufferedImage(Math.max(width, 64), Math.max(height, 64), BufferedImage.TYPE_BYTE_GRAY);
+        g2 = image.createGraphics();
+        // Aliased, normalized strokes set every pixel a thin line crosses, where thresholding antialiased
+        // coverage would drop a 1 pixel line that falls between two pixel columns
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+      }
+      g2.setTransform(new AffineTransform());
+      g2.setColor(Color.black);
+      g2.fillRect(0, 0, width, height);
+      g2.setColor(Color.white);
+      return g2;
+    }
+
+    byte[] getPixels () {
+      return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    int getStride () {
+      return image.getWidth();
+    }
+  }
+
+  /**
+   *  Rasterize one glyph
+   *  @param gdx glyph index
+   *  @param baseline family baseline in font units
+   */
+  Bitmap render (int gdx, int baseline, int pixels, float stroke) {
+    double scale = pixels / 32.0;
+    int left = font.getLeft(gdx);
+    int advance = (int) Math.round((font.getRight(gdx) - left) * scale);
+    Rectangle ink = GlyphMetrics.get(font).getBounds(gdx);
+    if (font.getLength(gdx) == 0) {
+      return new Bitmap(0, 0, 0, 0, advance, new byte[0]);
+    }
+    // Pixel area that can receive ink: the glyph's bounds padded by half the stroke
+    double pad = stroke / 2.0 + 1;
+    int x0 = (int) Math.floor((ink.x - left) * scale - pad), y0 = (int) Math.floor((ink.y - baseline) * scale - pad);
+    int x1 = (int) Math.ceil((ink.x + ink.width - left) * scale + pad);
+    int y1 = (int) Math.ceil((ink.y + ink.height - baseline) * scale + pad);
+    int width = x1 - x0, height = y1 - y0;
+    RenderBuffer buffer = buffers.get();
+    Graphics2D g2 = buffer.get(width, height);
+    g2.translate(-x0, -y0);
+    g2.scale(scale, scale);
+    g2.translate(-left, -baseline);
+    g2.setStroke(new BasicStroke((float) (stroke / scale), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+    Path2D.Double path = GlyphDetail.get(font).getPath(gdx, scale);
+    g2.draw(path);
+    // Trim to the pixels that are set
+    byte[] gray = buffer.getPixels();
+    int stride = buffer.getStride();
+    int minX = width, minY = height, maxX = -1, maxY = -1;
+    for (int yy = 0; yy < height; yy++) {
+      for (int xx = 0; xx < width; xx++) {
+        if ((gray[yy * stride + xx] & 0xFF) >= 128) {
+          minX = Math.min(minX, xx);
+          minY = Math.min(minY, yy);
+          maxX = Math.max(maxX, xx);
+          maxY = Math.max(maxY, yy);
+        }
+      }
+    }
+    if (maxX < 0) {
+      return new Bitmap(0, 0, 0, 0, advance, new byte[0]);
+    }
+    int bw = maxX - minX + 1, bh = maxY - minY + 1;
+    byte[] bits = new byte[bw * bh];
+    for (int yy = 0; yy < bh; yy++) {
+      for (int xx = 0; xx < bw; xx++) {
+        bits[yy * bw + xx] = (byte) ((gray[(yy + minY) * stride + xx + minX] & 0xFF) >= 128 ? 1 : 0);
+      }
+    }
+    return new Bitmap(bw, bh, x0 + minX, y0 + minY, advance, bits);
+  }
+
+  /**
+   *  Rasterize a family at one size
+   */
+  Face render (String family, int pixels, float stroke) {
+    Face face = newFace(family, pixels, stroke);
+    new GlyphTask(face, font.getGlyphTable(family), GlyphMetrics.get(font).getFamily(family).baseline, 0, 96).invoke();
+    return face;
+  }
+
+  private Face newFace (String family, int pixels, float stroke) {
+    GlyphMetrics.Family metrics = GlyphMetrics.get(font).getFamily(family);
+    double scale = pixels / 32.0;
+    return new Face(family, pixels, stroke, (int) Math.ceil(metrics.ascent * scale + stroke / 2),
+                    (int) Math.ceil(metrics.descent * scale + stroke / 2));
+  }
+
+  /**
+   *  Renders a range of a face's glyphs, splitting it in half until it's small enough to do directly
+   */
+  private class GlyphTask extends RecursiveAction {
+    private final Face  face;
+    private final int[] glyphs;
+    private final int   baseline, from, to;
+
+    GlyphTask (Face face, int[] glyphs, int baseline, int from, int to) {
+      this.face = face;
+      this.glyphs = glyphs;
+      this.baseline = baseline;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute () {
+      if (to - from > 8) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new GlyphTask(face, glyphs, baseline, from, mid), new GlyphTask(face, glyphs, baseline, mid, to));
+        return;
+      }
+      for (int ii = from; ii < to; ii++) {
+        if (glyphs[ii] >= 0) {
+          face.glyphs[ii] = render(glyphs[ii], baseline, face.pixels, face.stroke);
+        }
+      }
+    }
+  }
+
+  /**
+   *  Rasterize every combination of family, pixel height and stroke width and write each face's BDF, C
+   *  header, PNG sheet and JSON metrics to a directory
+   *  @param threads size of the fork-join pool
+   *  @return number of files written
+   */
+  int generate (Collection<String> families, int[] heights, float[] strokes, File dir, int threads) throws IOException {
+    List<RecursiveAction> tasks = new ArrayList<>();
+    for (String family : families) {
+      int[] glyphs = font.getGlyphTable(family);
+      int baseline = GlyphMetrics.get(font).getFamily(family).baseline;
+      for (int pixels : heights) {
+        for (float stroke : strokes) {
+          tasks.add(new RecursiveAction() {
+            @Override
+            protected void compute () {
+              Face face = newFace(family, pixels, stroke);
+              new GlyphTask(face, glyphs, baseline, 0, 96).invoke();
+              try {
+                write(face, dir);
+              } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+              }
+            }
+          });
+        }
+      }
+    }
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+    try {
+      pool.invoke(new RecursiveAction() {
+        @Override
+        protected void compute () {
+          invokeAll(tasks);
+        }
+      });
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    } finally {
+      pool.shutdown();
+    }
+    return tasks.size() * 4;
+  }
+
+  /**
+   *  Write a face in all formats
+   */
+  static void write (Face face, File dir) throws IOException {
+    String name = face.getName();
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(dir, name + ".bdf")))) {
+      writeBdf(face, out);
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(dir, name + ".h")))) {
+      writeHeader(face, out);
+    }
+    int[][] cells = new int[96][];
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(dir, name + ".png")))) {
+      ImageIO.write(getSheet(face, cells), "png", out);
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(dir, name + ".json")))) {
+      writeJson(face, cells, name + ".png", out);
+    }
+  }
+
+  private static String formatStroke (float stroke) {
+    return stroke == (int) stroke ? Integer.toString((int) stroke) : Float.toString(stroke);
+  }
+
+  /**
+   *  Glyph Bitmap Distribution Format (BDF 2.1)
+   */
+  static void writeBdf (Face face, OutputStream os) throws IOException {
+    int minX = 0, minY = 0, maxX = 0, maxY = 0, count = 0;
+    for (Bitmap bm : face.glyphs) {
+      if (bm != null) {
+        count++;
+        if (bm.width > 0) {
+          minX = Math.min(minX, bm.xOff);
+          minY = Math.min(minY, -(bm.yOff + bm.height));
+          maxX = Math.max(maxX, bm.xOff + bm.width);
+          maxY = Math.max(maxY, -bm.yOff);
+        }
+      }
+    }
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(os, StandardCharsets.US_ASCII));
+    out.print("STARTFONT 2.1\n");
+    out.print("FONT -Hershey-" + face.family.replace('-', ' ') + "-Medium-R-Normal--" + face.pixels + "-" +
+              face.pixels * 10 + "-75-75-P-0-ISO10646-1\n");
+    out.print("SIZE " + face.pixels + " 75 75\n");
+    out.print("FONTBOUNDINGBOX " + (maxX - minX) + " " + (maxY - minY) + " " + minX + " " + minY + "\n");
+    out.print("COMMENT Hershey " + face.family + ", stroke width " + formatStroke(face.stroke) + "\n");
+    out.print("STARTPROPERTIES 3\n");
+    out.print("FONT_ASCENT " + face.ascent + "\n");
+    out.print("FONT_DESCENT " + face.descent + "\n");
+    out.print("DEFAULT_CHAR 32\n");
+    out.print("ENDPROPERTIES\n");
+    out.print("CHARS " + count + "\n");
+    for (int ii = 0; ii < 96; ii++) {
+      Bitmap bm = face.glyphs[ii];
+      if (bm == null) {
+        continue;
+      }
+      out.print(String.format("STARTCHAR U+%04X\n", ii + 32));
+      out.print("ENCODING " + (ii + 32) + "\n");
+      out.print("SWIDTH " + Math.round(bm.advance * 1000.0 / face.pixels) + " 0\n");
+      out.print("DWIDTH " + bm.advance + " 0\n");
+      out.print("BBX " + bm.width + " " + bm.height + " " + bm.xOff + " " + -(bm.yOff + bm.height) + "\n");
+      out.print("BITMAP\n");
+      int rowBytes = (bm.width + 7) / 8;
+      for (int yy = 0; yy < bm.height; yy++) {
+        for (int bb = 0; bb < rowBytes; bb++) {
+          int val = 0;
+          for (int xx = bb * 8; xx < bb * 8 + 8; xx++) {
+            val = (val << 1) | (xx < bm.width && bm.get(xx, yy) ? 1 : 0);
+          }
+          out.print(String.format("%02X", val));
+        }
+        out.print('\n');
+      }
+      out.print("ENDCHAR\n");
+    }
+    out.print("ENDFONT\n");
+    out.flush();
+  }
+
+  /**
+   *  C header with all glyph bitmaps packed end to end, 1 bit per pixel, most significant bit first
+   */
+  static void writeHeader (Face face, OutputStream os) throws IOException {
+    String id = face.getName().replace('.', '_');
+    ByteArrayOutputStream packed = new ByteArrayOutputStream();
+    int[] offsets = new int[96];
+    int bits = 0, cur = 0;
+    for (int ii = 0; ii < 96; ii++) {
+      offsets[ii] = bits;
+      Bitmap bm = face.glyphs[ii];
+      if (bm == null) {
+        continue;
+      }
+      for (byte px : bm.pixels) {
+        cur = (cur << 1) | px;
+        if (++bits % 8 == 0) {
+          packed.write(cur);
+          cur = 0;
+        }
+      }
+    }
+    if (bits % 8 != 0) {
+      packed.write(cur << (8 - bits % 8));
+    }
+    Writer out = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+    out.write("// Hershey bitmap font: " + face.family + ", " + face.pixels + " px, stroke " + formatStroke(face.stroke) +
+              ", ASCII 0x20 - 0x7F\n");
+    out.write("// Each character's bitmap is width x height pixels, row by row, starting at bit\n");
+    out.write("// " + id + "_offset[ch - 32] of " + id + "_bits (most significant bit first).  Its top left\n");
+    out.write("// pixel is x_off, y_off from the pen position on the baseline (y down), and the pen then\n");
+    out.write("// moves right by advance.\n");
+    String guard = "HERSHEY_" + id.toUpperCase() + "_H";
+    out.write("#ifndef " + guard + "\n#define " + guard + "\n\n#include <stdint.h>\n\n");
+    out.write("#define " + id.toUpperCase() + "_ASCENT " + face.ascent + "\n");
+    out.write("#define " + id.toUpperCase() + "_DESCENT " + face.descent + "\n\n");
+    out.write("static const uint8_t " + id + "_bits[] = {");
+    byte[] data = packed.toByteArray();
+    for (int ii = 0; ii < data.length; ii++) {
+      out.write((ii % 16 == 0 ? "\n  " : " ") + String.format("0x%02X,", data[ii] & 0xFF));
+    }
+    out.write("\n};\n\n");
+    int[] width = new int[96], height = new int[96], xOff = new int[96], yOff = new int[96], advance = new int[96];
+    for (int ii = 0; ii < 96; ii++) {
+      Bitmap bm = face.glyphs[ii];
+      if (bm != null) {
+        width[ii] = bm.width;
+        height[ii] = bm.height;
+        xOff[ii] = bm.xOff;
+        yOff[ii] = bm.yOff;
+        advance[ii] = bm.advance;
+      }
+    }
+    writeTable(out, id + "_offset", offsets);
+    writeTable(out, id + "_width", width);
+    writeTable(out, id + "_height", height);
+    writeTable(out, id + "_x_off", xOff);
+    writeTable(out, id + "_y_off", yOff);
+    writeTable(out, id + "_advance", advance);
+    out.write("#endif\n");
+    out.flush();
+  }
+
+  /**
+   *  Write a C array of 96 values, 16 to a line, using the smallest integer type that holds them all
+   */
+  private static void writeTable (Writer out, String name, int[] values) throws IOException {
+    int min = 0, max = 0;
+    StringBuilder buf = new StringBuilder();
+    for (int ii = 0; ii < values.length; ii++) {
+      min = Math.min(min, values[ii]);
+      max = Math.max(max, values[ii]);
+      buf.append(ii % 16 == 0 ? "\n  " : " ").append(values[ii]).append(',');
+    }
+    String type;
+    if (min < 0) {
+      type = min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE ? "int8_t" : min >= Short.MIN_VALUE && max <= Short.MAX_VALUE ? "int16_t" : "int32_t";
+    } else {
+      type = max <= 0xFF ? "uint8_t" : max <= 0xFFFF ? "uint16_t" : "uint32_t";
+    }
+    out.write("static const " + type + " " + name + "[" + values.length + "] = {" + buf + "\n};\n\n");
+  }
+
+  /**
+   *  Draw a sprite sheet with one cell per character, 16 to a row.  Each cell is as wide as the widest
+   *  glyph and as tall as the face, with its glyph's origin at the cell's left edge (or further right, for
+   *  glyphs that extend left of their origin) on the baseline.
+   *  @param cells receives x, y, width, height of each glyph's bitmap in the sheet
+   */
+  static BufferedImage getSheet (Face face, int[][] cells) {
+    int left = 0, right = 1, top = face.ascent, bottom = face.descent;
+    for (Bitmap bm : face.glyphs) {
+      if (bm != null && bm.width > 0) {
+        left = Math.max(left, -bm.xOff);
+        right = Math.max(right, bm.xOff + bm.width);
+        top = Math.max(top, -bm.yOff);
+        bottom = Math.max(bottom, bm.yOff + bm.height);
+      }
+    }
+    int cellWidth = left + right, cellHeight = top + bottom;
+    BufferedImage sheet = new BufferedImage(COLUMNS * cellWidth, (96 / COLUMNS) * cellHeight, BufferedImage.TYPE_BYTE_BINARY);
+    Graphics2D g2 = sheet.createGraphics();
+    g2.setColor(Color.white);
+    g2.fillRect(0, 0, sheet.getWidth(), sheet.getHeight());
+    g2.dispose();
+    for (int ii = 0; ii < 96; ii++) {
+      Bitmap bm = face.glyphs[ii];
+      int ox = (ii % COLUMNS) * cellWidth + left, oy = (ii / COLUMNS) * cellHeight + top;
+      cells[ii] = bm != null ? new int[] {ox + bm.xOff, oy + bm.yOff, bm.width, bm.height} : null;
+      if (bm != null) {
+        for (int yy = 0; yy < bm.height; yy++) {
+          for (int xx = 0; xx < bm.width; xx++) {
+            if (bm.get(xx, yy)) {
+              sheet.setRGB(ox + bm.xOff + xx, oy + bm.yOff + yy, 0xFF000000);
+            }
+          }
+        }
+      }
+    }
+    return sheet;
+  }
+
+  /**
+   *  Metrics for a sprite sheet
+   */
+  static void writeJson (Face face, int[][] cells, String image, OutputStream os) throws IOException {
+    Writer out = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+    out.write("{\n  \"family\": \"" + face.family + "\",\n  \"image\": \"" + image + "\",\n  \"pixels\": " + face.pixels +
+              ",\n  \"stroke\": " + formatStroke(face.stroke) + ",\n  \"ascent\": " + face.ascent + ",\n  \"descent\": " +
+              face.descent + ",\n  \"glyphs\": [");
+    String sep = "\n";
+    for (int ii = 0; ii < 96; ii++) {
+      Bitmap bm = face.glyphs[ii];
+      if (bm == null) {
+        continue;
+      }
+      char cc = (char) (ii + 32);
+      String str = cc == '"' || cc == '\\' ? "\\" + cc : cc == 0x7F ? "\\u007f" : Character.toString(cc);
+      int[] cell = cells[ii];
+      out.write(sep + "    {\"char\": \"" + str + "\", \"code\": " + (ii + 32) + ", \"x\": " + cell[0] + ", \"y\": " + cell[1] +
+                ", \"width\": " + cell[2] + ", \"height\": " + cell[3] + ", \"xOffset\": " + bm.xOff + ", \"yOffset\": " +
+                bm.yOff + ", \"advance\": " + bm.advance + "}");
+      sep = ",\n";
+    }
+    out.write("\n  ]\n}\n");
+    out.flush();
+  }
+}
@@ -0,0 +1,284 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
+
+/**
+ *  Scrollable grid of glyph tiles for browsing the whole catalog, or one family.  Only tiles in view
+ *  are drawn.  Tiles are rendered by background threads into images taken from a pool of reusable
+ *  tiles, with the most recently requested tiles rendered first and requests for tiles that have
+ *  scrolled out of view dropped, so flinging through the whole set stays smooth.
+ */
+class CatalogView extends JComponent implements Scrollable {
+  private static final int          BASE_TILE = 40;
+  private static final Font         LABEL_FONT = new Font("Dialog", Font.PLAIN, 9);
+  private final HersheyFont         font;
+  private final IntConsumer         onSelect;
+  private final ThreadPoolExecutor  renderer;
+  private int[]                     glyphs;               // Glyph index shown in each tile
+  private int                       zoom = 1, tile = BASE_TILE;
+  private int                       generation;           // Bumped when tiles must be re-rendered
+  private volatile int              firstVisible, lastVisible;
+  // Rendered tiles and spare tile images (only used on the EDT)
+  private final Map<Integer,BufferedImage>  tiles;
+  private final Deque<BufferedImage>        pool = new ArrayDeque<>();
+  private final Set<Integer>                pending = new HashSet<>();
+  private int                               capacity = 256;
+
+  /**
+   *  @param font glyph source
+   *  @param onSelect called with a glyph index when a tile is clicked
+   */
+  CatalogView (HersheyFont font, IntConsumer onSelect) {
+    this.font = font;
+    this.onSelect = onSelect;
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    // LIFO queue, so tiles just scrolled into view are rendered before older requests
+    renderer = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS, new LinkedBlockingDeque<Runnable>() {
+      @Override
+      public boolean offer (Runnable task) {
+        return offerFirst(task);
+      }
+    }, r -> {
+      Thread thread = new Thread(r, "CatalogView");
+      thread.setDaemon(true);
+      return thread;
+    });
+    renderer.allowCoreThreadTimeOut(true);
+    tiles = new LinkedHashMap<Integer,BufferedImage>(256, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry (Map.Entry<Integer,BufferedImage> eldest) {
+        if (size() > capacity) {
+          pool.push(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+    setFamily(null);
+    addMouseListener(new MouseAdapter() {
+      @Override
+      public void mouseClicked (MouseEvent ev) {
+        int pos = tileAt(ev.getPoint());
+        if (pos >= 0 && glyphs[pos] >= 0) {
+          onSelect.accept(glyphs[pos]);
+        }
+      }
+    });
+    setToolTipText("");
+  }
+
+  /**
+   *  Show all glyphs, or just those of one family
+   *  @param family family name, or null for all glyphs
+   */
+  void setFamily (String family) {
+    if (family == null) {
+      glyphs = new int[font.glyphCount()];
+      for (int ii = 0; ii < glyphs.length; ii++) {
+        glyphs[ii] = ii;
+      }
+    } else {
+      glyphs = font.getGlyphTable(family);
+    }
+    reset();
+  }
+
+  /**
+   *  Set tile magnification (1 = one pixel per font unit)
+   */
+  void setZoom (int zoom) {
+    this.zoom = zoom;
+    tile = BASE_TILE * zoom;
+    pool.clear();
+    reset();
+  }
+
+  private void reset () {
+    generation++;
+    for (BufferedImage img : tiles.values()) {
+      if (img.getWidth() == tile) {
+        pool.push(img);
+      }
+    }
+    tiles.clear();
+    pending.clear();
+    revalidate();
+    repaint();
+  }
+
+  private int columns () {
+    return Math.max(1, getWidth() / tile);
+  }
+
+  private int tileAt (Point pt) {
+    int col = pt.x / tile;
+    int pos = (pt.y / tile) * columns() + col;
+    return col < columns() && pos < glyphs.length ? pos : -1;
+  }
+
+  @Override
+  public String getToolTipText (MouseEvent ev) {
+    int pos = tileAt(ev.getPoint());
+    if (pos >= 0 && glyphs[pos] >= 0) {
+      int code = font.getCode(glyphs[pos]);
+      String family = font.getFamily(code);
+      return "Code: " + code + (family != null ? " (" + family + ")" : "");
+    }
+    return null;
+  }
+
+  @Override
+  public Dimension getPreferredSize () {
+    int cols = getParent() instanceof JViewport ? Math.max(1, getParent().getWidth() / tile) : 16;
+    return new Dimension(cols * tile, ((glyphs.length + cols - 1) / cols) * tile);
+  }
+
+  @Override
+  protected void paintComponent (Graphics g) {
+    Rectangle clip = g.getClipBounds();
+    g.setColor(Color.white);
+    g.fillRect(clip.x, clip.y, clip.width, clip.height);
+    int cols = columns();
+    Rectangle view = getVisibleRect();
+    firstVisible = (view.y / tile) * cols;
+    lastVisible = ((view.y + view.height) / tile + 1) * cols - 1;
+    // Keep about three screens of tiles
+    capacity = Math.max(256, (lastVisible - firstVisible + 1) * 3);
+    int firstRow = clip.y / tile;
+    int lastRow = (clip.y + clip.height - 1) / tile;
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int col = 0; col < cols; col++) {
+        int pos = row * cols + col;
+        if (pos >= glyphs.length) {
+          return;
+        }
+        BufferedImage img = tiles.get(pos);
+        if (img != null) {
+          g.drawImage(img, col * tile, row * tile, null);
+        } else {
+          g.setColor(Color.lightGray);
+          g.drawRect(col * tile, row * tile, tile - 1, tile - 1);
+          request(pos);
+        }
+      }
+    }
+  }
+
+  /**
+   *  Queue a tile for rendering on a background thread, skipping it if it's out of view when its turn comes
+   */
+  private void request (int pos) {
+    if (!pending.add(pos)) {
+      return;
+    }
+    BufferedImage img = pool.isEmpty() ? new BufferedImage(tile, tile, BufferedImage.TYPE_INT_RGB) : pool.pop();
+    int gen = generation;
+    int gdx = glyphs[pos];
+    int size = tile;
+    int scale = zoom;
+    renderer.execute(() -> {
+      boolean visible = pos >= firstVisible && pos <= lastVisible;
+      if (visible) {
+        renderTile(img, gdx, size, scale);
+      }
+      SwingUtilities.invokeLater(() -> {
+        if (gen != generation) {
+          return;
+        }
+        pending.remove(pos);
+        if (visible) {
+          tiles.put(pos, img);
+          int cols = columns();
+          repaint((pos % cols) * tile, (pos / cols) * tile, tile, tile);
+        } else {
+          pool.push(img);
+        }
+      });
+    });
+  }
+
+  private void renderTile (BufferedImage img, int gdx, int size, int scale) {
+    Graphics2D g2 = img.createGraphics();
+    g2.setColor(Color.white);
+    g2.fillRect(0, 0, size, size);
+    g2.setColor(Color.lightGray);
+    g2.drawRect(0, 0, size - 1, size - 1);
+    if (gdx >= 0) {
+      g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+      g2.setFont(LABEL_FONT);
+      g2.setColor(Color.gray);
+      g2.drawString(Integer.toString(font.getCode(gdx)), 2, size - 2);
+      g2.setColor(Color.darkGray);
+      g2.setStroke(new BasicStroke(scale > 1 ? 1.5f : 1.0f));
+      AffineTransform at = AffineTransform.getTranslateInstance(size / 2.0, size / 2.0 - 3);
+      at.scale(scale, scale);
+      g2.draw(at.createTransformedShape(GlyphDetail.get(font).getPath(gdx, scale)));
+    }
+    g2.dispose();
+  }
+
+  @Override
+  public Dimension getPreferredScrollableViewportSize () {
+    return new Dimension(BASE_TILE * 16, BASE_TILE * 12);
+  }
+
+  @Override
+  public int getScrollableUnitIncrement (Rectangle visible, int orientation, int direction) {
+    return tile / 2;
+  }
+
+  @Override
+  public int getScrollableBlockIncrement (Rectangle visible, int orientation, int direction) {
+    return Math.max(tile, (visible.height / tile - 1) * tile);
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportWidth () {
+    return true;
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportHeight () {
+    return false;
+  }
+
+  /**
+   *  Show a catalog window with a family filter and zoom control
+   */
+  static void showCatalog (Frame owner, HersheyFont font, IntConsumer onSelect) {
+    JDialog dialog = new JDialog(owner, "Glyph Catalog", Dialog.ModalityType.MODELESS);
+    CatalogView catalog = new CatalogView(font, onSelect);
+    JScrollPane scroll = new JScrollPane(catalog, JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+    scroll.getViewport().addComponentListener(new ComponentAdapter() {
+      @Override
+      public void componentResized (ComponentEvent ev) {
+        catalog.revalidate();
+      }
+    });
+    JPanel controls = new JPanel();
+    List<String> names = new ArrayList<>();
+    names.add("All Glyphs");
+    names.addAll(font.getFamilies().keySet());
+    JComboBox<String> family = new JComboBox<>(names.toArray(new String[0]));
+    family.addActionListener(ev -> catalog.setFamily(family.getSelectedIndex() > 0 ? (String) family.getSelectedItem() : null));
+    controls.add(family);
+    JComboBox<String> zoom = new JComboBox<>(new String[] {"1", "2", "4"});
+    zoom.addActionListener(ev -> catalog.setZoom(Integer.parseInt((String) zoom.getSelectedItem())));
+    controls.add(zoom);
+    dialog.add(controls, BorderLayout.NORTH);
+    dialog.add(scroll, BorderLayout.CENTER);
+    dialog.pack();
+    dialog.setLocationRelativeTo(owner);
+    dialog.setVisible(true);
+  }
+}
@@ -0,0 +1,297 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Built in performance instrumentation.  Each instrumented stage keeps a call count, total and maximum
+ *  time, a size total (glyphs, segments or bytes, depending on the stage) and a histogram of times in
+ *  power of two microsecond buckets.  When the JVM has Flight Recorder, each call is also recorded as
+ *  a JFR event, spanning the call, whenever a recording has that event enabled.  The events are defined by DiagnosticEvents, which is
+ *  built from the jfr source folder on JDK 11 or later and loaded by name, so this class neither
+ *  compiles nor runs against jdk.jfr itself.  Stats can be viewed in the diagnostics window (see
+ *  DiagnosticsView) or, for headless runs, written to a file when the JVM exits by setting the
+ *  "hershey.diagnostics" system property to a file name (a name ending in ".jfr" records a Flight
+ *  Recording instead).
+ *  <pre>
+ *    long start = Diagnostics.start();
+ *    Object event = Diagnostics.begin(Diagnostics.Stage.EXPORT);
+ *    ...
+ *    Diagnostics.end(Diagnostics.Stage.EXPORT, start, event, bytes, family);
+ *  </pre>
+ */
+class Diagnostics {
+  static final int              BUCKETS = 32;       // Bucket n counts times under 2^n microseconds
+  private static final Recorder recorder = loadRecorder();   // Null without Flight Recorder
+  private static final Stats[]  stats = new Stats[Stage.values().length];
+
+  /**
+   *  Flight Recorder events and recordings, implemented by DiagnosticEvents
+   */
+  interface Recorder {
+    /**
+     *  @return the stage's event, begun, or null if no recording has it enabled
+     */
+    Object begin (Stage stage);
+
+    /**
+     *  End an event from begin() and commit it if the recording's settings (such as a threshold) allow
+     */
+    void commit (Object event, long size, String detail);
+
+    /**
+     *  @param destination file written when the JVM exits, or null to only save with stopRecording()
+     */
+    void startRecording (File destination) throws IOException;
+
+    /**
+     *  @param file file to write, or null to discard the recording
+     */
+    void stopRecording (File file) throws IOException;
+  }
+
+  enum Stage {
+    FONT_LOAD("Font load", "glyphs"),
+    PAINT("Paint", ""),
+    VECTORS("getVectors", "segments"),
+    THUMBNAILS("Thumbnails", "glyphs"),
+    EXPORT("Export", "bytes"),
+    FONT_RELOAD("Font reload", "glyphs");
+
+    final String  label, unit;
+
+    Stage (String label, String unit) {
+      this.label = label;
+      this.unit = unit;
+    }
+  }
+
+  /**
+   *  Counters for one stage.  All updates are lock free, so instrumented code on any thread only pays
+   *  for a few atomic adds.
+   */
+  static class Stats {
+    private final LongAdder       count = new LongAdder(), nanos = new LongAdder(), size = new LongAdder();
+    private final AtomicLong      max = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    void add (long elapsed, long amount) {
+      count.increment();
+      nanos.add(elapsed);
+      size.add(amount);
+      if (elapsed > max.get()) {
+        max.accumulateAndGet(elapsed, Math::max);
+      }
+      long micros = elapsed / 1000;
+      histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+    }
+
+    long getCount () {
+      return count.sum();
+    }
+
+    /**
+     *  @return mean time in ms
+     */
+    double getMean () {
+      long calls = count.sum();
+      return calls > 0 ? nanos.sum() / 1e6 / calls : 0;
+    }
+
+    /**
+     *  @return maximum time in ms
+     */
+    double getMax () {
+      return max.get() / 1e6;
+    }
+
+    long getSize () {
+      return size.sum();
+    }
+
+    long getBucket (int bucket) {
+      return histogram.get(bucket);
+    }
+
+    void reset () {
+      count.reset();
+      nanos.reset();
+      size.reset();
+      max.set(0);
+      for (int ii = 0; ii < BUCKETS; ii++) {
+        histogram.set(ii, 0);
+      }
+    }
+
+    /**
+     *  Estimate a percentile from the histogram, as the upper bound of the bucket it falls in
+     *  @return time in ms
+     */
+    double getPercentile (double pct) {
+      long total = 0;
+      long[] counts = new long[BUCKETS];
+      for (int ii = 0; ii < BUCKETS; ii++) {
+        total += counts[ii] = histogram.get(ii);
+      }
+      long rank = (long) Math.ceil(total * pct / 100);
+      long seen = 0;
+      for (int ii = 0; ii < BUCKETS; ii++) {
+        seen += counts[ii];
+        if (seen >= rank && seen > 0) {
+          return Math.min((1L << ii) / 1000.0, max.get() / 1e6);
+        }
+      }
+      return 0;
+    }
+  }
+
+  static {
+    for (int ii = 0; ii < stats.length; ii++) {
+      stats[ii] = new Stats();
+    }
+  }
+
+  static Stats getStats (Stage stage) {
+    return stats[stage.ordinal()];
+  }
+
+  /**
+   *  @return true if the JVM has Flight Recorder and the build included DiagnosticEvents
+   */
+  static boolean isFlightRecorderAvailable () {
+    return recorder != null;
+  }
+
+  private static Recorder loadRecorder () {
+    try {
+      return (Recorder) Class.forName("DiagnosticEvents").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | IllegalStateException ex) {
+      // Built without the jfr folder, or the JVM has no Flight Recorder
+      return null;
+    }
+  }
+
+  /**
+   *  Start a Flight Recording with the JDK's default settings, if Flight Recorder is available
+   *  @param destination file written when the JVM exits, or null to only save with stopRecording()
+   */
+  static void startRecording (File destination) throws IOException {
+    if (recorder != null) {
+      recorder.startRecording(destination);
+    }
+  }
+
+  /**
+   *  Stop the Flight Recording
+   *  @param file file to write, or null to discard the recording
+   */
+  static void stopRecording (File file) throws IOException {
+    if (recorder != null) {
+      recorder.stopRecording(file);
+    }
+  }
+
+  /**
+   *  Get the start time of an instrumented call
+   */
+  static long start () {
+    return System.nanoTime();
+  }
+
+  /**
+   *  Begin the JFR event for an instrumented call, after start()
+   *  @return the event, or null if Flight Recorder isn't recording the stage's events
+   */
+  static Object begin (Stage stage) {
+    return recorder != null ? recorder.begin(stage) : null;
+  }
+
+  /**
+   *  Record an instrumented call
+   *  @param stage stage the call belongs to
+   *  @param start value returned by start()
+   *  @param event value returned by begin()
+   *  @param amount amount of work done, in the stage's units
+   *  @param detail description for the JFR event (such as a family name), or null
+   */
+  static void end (Stage stage, long start, Object event, long amount, String detail) {
+    long elapsed = System.nanoTime() - start;
+    stats[stage.ordinal()].add(elapsed, amount);
+    if (event != null) {
+      recorder.commit(event, amount, detail);
+    }
+  }
+
+  static void reset () {
+    for (Stats stat : stats) {
+      stat.reset();
+    }
+  }
+
+  /**
+   *  Write a report of all stages, with each stage's histogram
+   */
+  static void writeReport (Writer out) throws IOException {
+    out.write(String.format(Locale.ROOT, "%-12s %10s %12s %10s %10s %10s %10s %14s%n", "Stage", "Count", "Total ms",
+                            "Mean ms", "p50 ms", "p99 ms", "Max ms", "Size"));
+    for (Stage stage : Stage.values()) {
+      Stats stat = stats[stage.ordinal()];
+      long count = stat.getCount();
+      out.write(String.format(Locale.ROOT, "%-12s %10d %12.3f %10.4f %10.4f %10.4f %10.4f %14s%n", stage.label, count,
+                              stat.nanos.sum() / 1e6, stat.getMean(), stat.getPercentile(50), stat.getPercentile(99),
+                              stat.getMax(), stage.unit.isEmpty() ? "" : stat.getSize() + " " + stage.unit));
+    }
+    for (Stage stage : Stage.values()) {
+      Stats stat = stats[stage.ordinal()];
+      if (stat.getCount() > 0) {
+        out.write(String.format("%n%s histogram (us):%n", stage.label));
+        for (int ii = 0; ii < BUCKETS; ii++) {
+          long count = stat.getBucket(ii);
+          if (count > 0) {
+            out.write(String.format(Locale.ROOT, "  < %-10d %d%n", 1L << ii, count));
+          }
+        }
+      }
+    }
+    out.flush();
+  }
+
+  static void writeReport (File file) throws IOException {
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+      writeReport(out);
+    }
+  }
+
+  /**
+   *  Set up a dump when the JVM exits, for headless runs
+   *  @param file report file, or a ".jfr" file to record a Flight Recording from now until exit, or
+   *  null for none
+   */
+  static void dumpOnExit (String file) {
+    if (file == null) {
+      return;
+    }
+    boolean jfr = file.endsWith(".jfr");
+    if (jfr && recorder == null) {
+      System.err.println("Flight Recorder isn't available, so " + file + " won't be written");
+      return;
+    }
+    if (jfr) {
+      try {
+        startRecording(new File(file));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      return;
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        writeReport(new File(file));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+    }, "Diagnostics"));
+  }
+}
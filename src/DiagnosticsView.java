@@ -0,0 +1,185 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ *  Window showing the counters kept by Diagnostics: a table of stages and a histogram of the selected
+ *  stage's call times.  Kept apart from Diagnostics so instrumented code doesn't load Swing.
+ */
+class DiagnosticsView {
+  private static final Diagnostics.Stage[] STAGES = Diagnostics.Stage.values();
+
+  /**
+   *  Table of stage stats, refreshed from the counters
+   */
+  private static class StatsModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"Stage", "Count", "Mean ms", "p50 ms", "p99 ms", "Max ms", "Size"};
+
+    public int getRowCount () {
+      return STAGES.length;
+    }
+
+    public int getColumnCount () {
+      return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName (int col) {
+      return COLUMNS[col];
+    }
+
+    public Object getValueAt (int row, int col) {
+      Diagnostics.Stage stage = STAGES[row];
+      Diagnostics.Stats stat = Diagnostics.getStats(stage);
+      switch (col) {
+        case 0:
+          return stage.label;
+        case 1:
+          return stat.getCount();
+        case 2:
+          return String.format("%.4f", stat.getMean());
+        case 3:
+          return String.format("%.4f", stat.getPercentile(50));
+        case 4:
+          return String.format("%.4f", stat.getPercentile(99));
+        case 5:
+          return String.format("%.4f", stat.getMax());
+        default:
+          return stage.unit.isEmpty() ? "" : stat.getSize() + " " + stage.unit;
+      }
+    }
+  }
+
+  /**
+   *  Bar chart of a stage's histogram
+   */
+  private static class HistogramView extends JComponent {
+    private int stage;
+
+    HistogramView () {
+      setPreferredSize(new Dimension(560, 140));
+    }
+
+    void setStage (int stage) {
+      this.stage = stage;
+      repaint();
+    }
+
+    @Override
+    protected void paintComponent (Graphics g) {
+      g.setColor(Color.white);
+      g.fillRect(0, 0, getWidth(), getHeight());
+      Diagnostics.Stats stat = Diagnostics.getStats(STAGES[stage]);
+      int first = Diagnostics.BUCKETS, last = -1;
+      long most = 0;
+      for (int ii = 0; ii < Diagnostics.BUCKETS; ii++) {
+        long count = stat.getBucket(ii);
+        if (count > 0) {
+          first = Math.min(first, ii);
+          last = ii;
+          most = Math.max(most, count);
+        }
+      }
+      g.setColor(Color.darkGray);
+      if (last < 0) {
+        g.drawString("No calls recorded for " + STAGES[stage].label, 10, getHeight() / 2);
+        return;
+      }
+      int bars = last - first + 1, width = (getWidth() - 20) / Math.max(bars, 1), base = getHeight() - 20;
+      for (int ii = first; ii <= last; ii++) {
+        int x = 10 + (ii - first) * width;
+        int height = (int) Math.round((base - 20) * (double) stat.getBucket(ii) / most);
+        g.setColor(new Color(70, 110, 180));
+        g.fillRect(x + 1, base - height, width - 2, height);
+        g.setColor(Color.darkGray);
+        g.drawString("<" + formatMicros(1L << ii), x + 2, base + 14);
+      }
+      g.drawString(STAGES[stage].label + " call times", 10, 14);
+    }
+
+    private static String formatMicros (long micros) {
+      return micros >= 1000000 ? micros / 1000000 + "s" : micros >= 1000 ? micros / 1000 + "ms" : micros + "us";
+    }
+  }
+
+  /**
+   *  Show the diagnostics window, which refreshes once a second while it's open
+   */
+  static void showDiagnostics (Frame owner) {
+    JDialog dialog = new JDialog(owner, "Diagnostics", Dialog.ModalityType.MODELESS);
+    StatsModel model = new StatsModel();
+    JTable table = new JTable(model);
+    table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    table.setRowSelectionInterval(0, 0);
+    HistogramView histogram = new HistogramView();
+    table.getSelectionModel().addListSelectionListener(ev -> histogram.setStage(Math.max(0, table.getSelectedRow())));
+    JScrollPane scroll = new JScrollPane(table);
+    scroll.setPreferredSize(new Dimension(560, table.getRowHeight() * (STAGES.length + 2)));
+    JPanel buttons = new JPanel();
+    JButton reset = new JButton("Reset");
+    reset.addActionListener(ev -> {
+      Diagnostics.reset();
+      model.fireTableRowsUpdated(0, STAGES.length - 1);
+      histogram.repaint();
+    });
+    buttons.add(reset);
+    JButton save = new JButton("Save Report...");
+    save.addActionListener(ev -> {
+      JFileChooser chooser = new JFileChooser();
+      chooser.setSelectedFile(new File("diagnostics.txt"));
+      if (chooser.showSaveDialog(dialog) == JFileChooser.APPROVE_OPTION) {
+        try {
+          Diagnostics.writeReport(chooser.getSelectedFile());
+        } catch (IOException ex) {
+          ex.printStackTrace();
+        }
+      }
+    });
+    buttons.add(save);
+    if (Diagnostics.isFlightRecorderAvailable()) {
+      JToggleButton record = new JToggleButton("Record JFR");
+      record.setToolTipText("Record a Flight Recording, including these stages' events, until clicked again");
+      record.addActionListener(ev -> {
+        try {
+          if (record.isSelected()) {
+            Diagnostics.startRecording(null);
+          } else {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setSelectedFile(new File("hersheyview.jfr"));
+            boolean approved = chooser.showSaveDialog(dialog) == JFileChooser.APPROVE_OPTION;
+            Diagnostics.stopRecording(approved ? chooser.getSelectedFile() : null);
+          }
+        } catch (IOException ex) {
+          ex.printStackTrace();
+        }
+      });
+      buttons.add(record);
+    }
+    Timer timer = new Timer(1000, ev -> {
+      int row = table.getSelectedRow();
+      model.fireTableRowsUpdated(0, STAGES.length - 1);
+      if (row >= 0) {
+        table.setRowSelectionInterval(row, row);
+      }
+      histogram.repaint();
+    });
+    timer.start();
+    dialog.addWindowListener(new WindowAdapter() {
+      @Override
+      public void windowClosed (WindowEvent ev) {
+        timer.stop();
+      }
+    });
+    dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+    dialog.add(scroll, BorderLayout.NORTH);
+    dialog.add(histogram, BorderLayout.CENTER);
+    dialog.add(buttons, BorderLayout.SOUTH);
+    dialog.pack();
+    dialog.setLocationRelativeTo(owner);
+    dialog.setVisible(true);
+  }
+}
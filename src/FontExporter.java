@@ -0,0 +1,401 @@
+import java.awt.Rectangle;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ *  Exports font families to files in one of several formats.  exportAll() writes every requested family
+ *  concurrently on a worker pool, one file per family, streaming each file through a buffered FileChannel
+ *  rather than building it in memory.  Progress is reported as each family completes and a running export
+ *  can be cancelled, which stops any family that hasn't started yet.
+ */
+class FontExporter {
+  private static final int  BUFFER_SIZE = 64 * 1024;
+
+  /**
+   *  Output format for one family
+   */
+  interface Format {
+    String getName ();
+
+    String getExtension ();
+
+    void write (HersheyFont font, String family, int[] codes, OutputStream out) throws IOException;
+  }
+
+  interface Listener {
+    /**
+     *  Called (from a worker thread) as each family is written
+     */
+    void progress (int done, int total, String family);
+  }
+
+  private final HersheyFont font;
+  private volatile boolean  cancelled;
+
+  FontExporter (HersheyFont font) {
+    this.font = font;
+  }
+
+  void cancel () {
+    cancelled = true;
+  }
+
+  boolean isCancelled () {
+    return cancelled;
+  }
+
+  /**
+   *  Export families concurrently, one file per family named after the family, and wait until done
+   *  @param families names of the families to export
+   *  @param format output format
+   *  @param dir directory for the output files
+   *  @param threads number of worker threads
+   *  @param listener progress listener, or null
+   *  @return files written (fewer than requested if cancelled)
+   */
+  List<File> exportAll (Collection<String> families, Format format, File dir, int threads, Listener listener)
+      throws IOException, InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, families.size())));
+    int total = families.size();
+    int[] done = {0};
+    List<Future<File>> results = new ArrayList<>();
+    try {
+      for (String family : families) {
+        results.add(pool.submit(() -> {
+          if (cancelled) {
+            return null;
+          }
+          File file = new File(dir, getFileName(family, format));
+          exportFamily(font, family, format, file);
+          if (listener != null) {
+            synchronized (done) {
+              listener.progress(++done[0], total, family);
+            }
+          }
+          return file;
+        }));
+      }
+      List<File> files = new ArrayList<>();
+      for (Future<File> result : results) {
+        File file = result.get();
+        if (file != null) {
+          files.add(file);
+        }
+      }
+      return files;
+    } catch (ExecutionException ex) {
+      cancelled = true;
+      Throwable cause = ex.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   *  Build a file name from a family name, such as "roman_simplex.h"
+   */
+  static String getFileName (String family, Format format) {
+    return getIdentifier(family) + "." + format.getExtension();
+  }
+
+  static String getIdentifier (String family) {
+    return family.toLowerCase().replaceAll("[^a-z0-9]+", "_");
+  }
+
+  /**
+   *  Export one family to a file
+   */
+  static void exportFamily (HersheyFont font, String family, Format format, File file) throws IOException {
+    int[] codes = font.getFamilies().get(family);
+    if (codes == null) {
+      throw new IllegalArgumentException("Unknown font family: " + family);
+    }
+    long start = Diagnostics.start();
+    Object event = Diagnostics.begin(Diagnostics.Stage.EXPORT);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING);
+         OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+      format.write(font, family, codes, out);
+    }
+    Diagnostics.end(Diagnostics.Stage.EXPORT, start, event, file.length(), family + " (" + format.getName() + ")");
+  }
+
+  /**
+   *  Escape a character for an XML attribute
+   */
+  static String escape (char cc) {
+    switch (cc) {
+      case '&':
+        return "&amp;";
+      case '<':
+        return "&lt;";
+      case '>':
+        return "&gt;";
+      case '"':
+        return "&quot;";
+      default:
+        return Character.toString(cc);
+    }
+  }
+
+  static Format getFormat (String name) {
+    for (Format format : FORMATS) {
+      if (format.getName().equalsIgnoreCase(name) || format.getExtension().equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unknown export format: " + name);
+  }
+
+  /**
+   *  Decodes a family's glyphs into x,y vertex pairs with PEN_UP pairs between strokes
+   */
+  private static class Encoder implements HersheyFont.GlyphSink {
+    private final byte[][]  verts = new byte[96][];
+    private final int[]     left = new int[96], right = new int[96];
+    private byte[]          buf = new byte[512];
+    private int             len;
+
+    Encoder (HersheyFont font, int[] codes) {
+      for (int ii = 0; ii < 96; ii++) {
+        int gdx = font.indexOf(codes[ii]);
+        len = 0;
+        font.visit(gdx, this);
+        verts[ii] = Arrays.copyOf(buf, len);
+        left[ii] = font.getLeft(gdx);
+        right[ii] = font.getRight(gdx);
+      }
+    }
+
+    public void moveTo (int x, int y) {
+      if (len > 0) {
+        add(HersheyFont.PEN_UP, HersheyFont.PEN_UP);
+      }
+      add(x, y);
+    }
+
+    public void lineTo (int x, int y) {
+      add(x, y);
+    }
+
+    private void add (int x, int y) {
+      if (len + 2 > buf.length) {
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+      buf[len++] = (byte) x;
+      buf[len++] = (byte) y;
+    }
+  }
+
+  /**
+   *  The original text format: a header with the family bounds, then one line per character with its
+   *  left,right metrics followed by x1,y1,x2,y2 line segments, all separated by '|'
+   */
+  static final Format TEXT = new Format() {
+    public String getName () {
+      return "Text";
+    }
+
+    public String getExtension () {
+      return "txt";
+    }
+
+    public void write (HersheyFont font, String family, int[] codes, OutputStream os) throws IOException {
+      // Decode each glyph's segments once into a shared buffer
+      int[] glyphs = new int[96];
+      int[] first = new int[97];
+      for (int ii = 0; ii < 96; ii++) {
+        glyphs[ii] = font.indexOf(codes[ii]);
+        first[ii + 1] = first[ii] + font.getSegmentCount(glyphs[ii]) * 4;
+      }
+      int[] segs = new int[first[96]];
+      for (int ii = 0; ii < 96; ii++) {
+        font.getSegments(glyphs[ii], segs, first[ii]);
+      }
+      // Header bounds are the precomputed family bounds, always including the origin
+      Rectangle bnds = GlyphMetrics.get(font).getFamily(family).bounds.union(new Rectangle());
+      int minX = bnds.x, minY = bnds.y, maxX = bnds.x + bnds.width, maxY = bnds.y + bnds.height;
+      Writer out = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+      out.write("// Font: " + family + " - Bounds {" + minX + ", " + minY + ", " + maxX + ", " + maxY + "} " +
+                (maxX - minX) + " x " + (maxY - minY) + " - Note: {left,right},{x1,y1,x2,y2},..\n");
+      for (int ii = 32; ii < 128; ii++) {
+        int gdx = glyphs[ii - 32];
+        out.write('\'');
+        out.write((char) ii);
+        out.write("':");
+        out.write(Integer.toString(font.getLeft(gdx)));
+        out.write(',');
+        out.write(Integer.toString(font.getRight(gdx)));
+        for (int jj = first[ii - 32]; jj < first[ii - 31]; jj += 4) {
+          out.write('|');
+          out.write(Integer.toString(segs[jj]));
+          out.write(',');
+          out.write(Integer.toString(segs[jj + 1]));
+          out.write(',');
+          out.write(Integer.toString(segs[jj + 2]));
+          out.write(',');
+          out.write(Integer.toString(segs[jj + 3]));
+        }
+        out.write('\n');
+      }
+      out.write('\n');
+      out.flush();
+    }
+  };
+
+  /**
+   *  SVG font with one single stroke path per glyph.  SVG fonts have y pointing up from the baseline and
+   *  each glyph's origin at its left edge, so y is flipped about the family's baseline and x shifted by the
+   *  glyph's left metric.  Vertical metrics and automatic kerning pairs come from GlyphMetrics.
+   */
+  static final Format SVG = new Format() {
+    public String getName () {
+      return "SVG Font";
+    }
+
+    public String getExtension () {
+      return "svg";
+    }
+
+    public void write (HersheyFont font, String family, int[] codes, OutputStream os) throws IOException {
+      Encoder enc = new Encoder(font, codes);
+      GlyphMetrics metrics = GlyphMetrics.get(font);
+      GlyphMetrics.Family fam = metrics.getFamily(family);
+      Writer out = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+      out.write("<?xml version=\"1.0\" standalone=\"no\"?>\n");
+      out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\">\n<defs>\n");
+      out.write("<font id=\"" + getIdentifier(family) + "\" horiz-adv-x=\"" + (enc.right[0] - enc.left[0]) + "\">\n");
+      out.write("<font-face font-family=\"" + family + "\" units-per-em=\"32\" ascent=\"" + fam.ascent +
+                "\" descent=\"" + -fam.descent + "\" cap-height=\"" + fam.capHeight + "\" x-height=\"" +
+                fam.xHeight + "\"/>\n");
+      out.write("<missing-glyph horiz-adv-x=\"" + (enc.right[0] - enc.left[0]) + "\"/>\n");
+      StringBuilder path = new StringBuilder();
+      for (int ii = 0; ii < 96; ii++) {
+        byte[] verts = enc.verts[ii];
+        int left = enc.left[ii];
+        path.setLength(0);
+        boolean move = true;
+        for (int jj = 0; jj < verts.length; jj += 2) {
+          if (verts[jj] == HersheyFont.PEN_UP) {
+            move = true;
+          } else {
+            path.append(path.length() > 0 ? " " : "").append(move ? "M" : "L");
+            path.append(verts[jj] - left).append(' ').append(fam.baseline - verts[jj + 1]);
+            move = false;
+          }
+        }
+        out.write("<glyph unicode=\"" + escape((char) (ii + 32)) + "\" horiz-adv-x=\"" + (enc.right[ii] - left) + "\"");
+        out.write(path.length() > 0 ? " d=\"" + path + "\"/>\n" : "/>\n");
+      }
+      // SVG kerning is subtracted from the advance, so it's the negated table value
+      byte[] kern = metrics.getKerning(family);
+      for (int ii = 0; ii < kern.length; ii++) {
+        if (kern[ii] != 0) {
+          out.write("<hkern u1=\"" + escape((char) (ii / 96 + 32)) + "\" u2=\"" + escape((char) (ii % 96 + 32)) +
+                    "\" k=\"" + -kern[ii] + "\"/>\n");
+        }
+      }
+      out.write("</font>\n</defs>\n</svg>\n");
+      out.flush();
+    }
+  };
+
+  /**
+   *  C header with the family's vertices in one int8_t array plus per character offset, length and
+   *  left/right tables, for use in firmware
+   */
+  static final Format C_HEADER = new Format() {
+    public String getName () {
+      return "C Header";
+    }
+
+    public String getExtension () {
+      return "h";
+    }
+
+    public void write (HersheyFont font, String family, int[] codes, OutputStream os) throws IOException {
+      Encoder enc = new Encoder(font, codes);
+      String id = getIdentifier(family);
+      int total = 0;
+      for (byte[] verts : enc.verts) {
+        total += verts.length;
+      }
+      String offsetType = total / 2 <= 0xFFFF ? "uint16_t" : "uint32_t";
+      Writer out = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+      out.write("// Hershey font: " + family + ", ASCII 0x20 - 0x7F\n");
+      out.write("// Vertices are x,y pairs in font units (y down, origin at the glyph's center).  A pair of\n");
+      out.write("// -128,-128 lifts the pen before the next stroke.  A character's vertices start at pair\n");
+      out.write("// " + id + "_offset[ch - 32] and there are " + id + "_length[ch - 32] pairs.\n");
+      String guard = "HERSHEY_" + id.toUpperCase() + "_H";
+      out.write("#ifndef " + guard + "\n#define " + guard + "\n\n#include <stdint.h>\n\n");
+      out.write("static const int8_t " + id + "_vertices[] = {\n");
+      for (int ii = 0; ii < 96; ii++) {
+        byte[] verts = enc.verts[ii];
+        out.write("  // '" + ((ii + 32) == '\\' ? "\\\\" : Character.toString((char) (ii + 32))) + "'\n");
+        for (int jj = 0; jj < verts.length; jj += 2) {
+          out.write(jj % 16 == 0 ? "  " : " ");
+          out.write(verts[jj] + "," + verts[jj + 1] + ",");
+          if (jj % 16 == 14 || jj + 2 == verts.length) {
+            out.write('\n');
+          }
+        }
+      }
+      out.write("};\n\n");
+      int offset = 0;
+      StringBuilder offsets = new StringBuilder(), lengths = new StringBuilder();
+      StringBuilder lefts = new StringBuilder(), rights = new StringBuilder();
+      for (int ii = 0; ii < 96; ii++) {
+        String sep = ii % 16 == 0 ? "\n  " : " ";
+        offsets.append(sep).append(offset).append(',');
+        lengths.append(sep).append(enc.verts[ii].length / 2).append(',');
+        lefts.append(sep).append(enc.left[ii]).append(',');
+        rights.append(sep).append(enc.right[ii]).append(',');
+        offset += enc.verts[ii].length / 2;
+      }
+      out.write("static const " + offsetType + " " + id + "_offset[96] = {" + offsets + "\n};\n\n");
+      out.write("static const uint16_t " + id + "_length[96] = {" + lengths + "\n};\n\n");
+      out.write("static const int8_t " + id + "_left[96] = {" + lefts + "\n};\n\n");
+      out.write("static const int8_t " + id + "_right[96] = {" + rights + "\n};\n\n");
+      out.write("#endif\n");
+      out.flush();
+    }
+  };
+
+  /**
+   *  Compact binary (big endian): int magic "HFAM", short version, UTF family name, byte glyph count,
+   *  then for each glyph: byte left, byte right, short vertex pairs, and the x,y pairs (-128,-128 = pen up)
+   */
+  static final Format BINARY = new Format() {
+    public String getName () {
+      return "Binary";
+    }
+
+    public String getExtension () {
+      return "hfam";
+    }
+
+    public void write (HersheyFont font, String family, int[] codes, OutputStream os) throws IOException {
+      Encoder enc = new Encoder(font, codes);
+      DataOutputStream out = new DataOutputStream(os);
+      out.writeInt(0x4846414D);
+      out.writeShort(1);
+      out.writeUTF(family);
+      out.writeByte(96);
+      for (int ii = 0; ii < 96; ii++) {
+        out.writeByte(enc.left[ii]);
+        out.writeByte(enc.right[ii]);
+        out.writeShort(enc.verts[ii].length / 2);
+        out.write(enc.verts[ii]);
+      }
+      out.flush();
+    }
+  };
+
+  static final Format[] FORMATS = {TEXT, SVG, C_HEADER, BINARY};
+}
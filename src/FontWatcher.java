@@ -0,0 +1,161 @@
+import javax.swing.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Loads the font from Hurt format sources in a directory and watches the directory for edits.  The
+ *  files are the ones named by the "hershey.sources" and "hershey.ascii" properties (default hershey.txt
+ *  and ascii.txt), resolved against the directory.  When one of them changes, the watcher thread waits
+ *  for writes to settle, builds an updated font with HersheyFont.update() (which only decodes glyphs
+ *  whose records changed) and hands it to the listener on the event dispatch thread, so the UI swaps
+ *  fonts between repaints and is never blocked by parsing.  If the edited files can't be parsed (say,
+ *  because they were caught half saved), the error is printed and the current font stays in use.
+ */
+class FontWatcher implements Closeable {
+  private static final long SETTLE_MS = 200;      // Quiet time after the last change before reloading
+  private final Path        dir;
+  private final List<File>  fontFiles = new ArrayList<>();
+  private final File        lookupFile;
+  private final WatchService watcher;
+  private final Thread      thread;
+  private final HersheyFont.Changes initial;
+  private Listener          listener;
+  private HersheyFont       font;                 // Only used on the watcher thread once started
+  private volatile boolean  closed;               // Set by close(), so a reload in progress is dropped
+
+  interface Listener {
+    /**
+     *  Called on the event dispatch thread with each updated font
+     */
+    void fontChanged (HersheyFont.Changes changes);
+  }
+
+  /**
+   *  Load the font from a directory, ready to start watching it
+   *  @param current font in use, to compare the directory's font with (see getChanges()), or null
+   */
+  FontWatcher (File dir, HersheyFont current) throws IOException {
+    this.dir = dir.toPath().toAbsolutePath();
+    for (String name : System.getProperty("hershey.sources", "hershey.txt").split(",")) {
+      fontFiles.add(this.dir.resolve(name.trim()).toFile());
+    }
+    lookupFile = this.dir.resolve(System.getProperty("hershey.ascii", "ascii.txt")).toFile();
+    if (current != null) {
+      initial = current.update(fontFiles, lookupFile);
+      font = initial.font;
+    } else {
+      initial = null;
+      font = HersheyFont.read(fontFiles, lookupFile);
+    }
+    watcher = FileSystems.getDefault().newWatchService();
+    // Editors often save by writing a new file and renaming it, which shows up as a create
+    this.dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    thread = new Thread(this::watch, "FontWatcher");
+    thread.setDaemon(true);
+  }
+
+  /**
+   *  Font loaded from the directory when the watcher was created
+   */
+  HersheyFont getFont () {
+    return initial != null ? initial.font : font;
+  }
+
+  /**
+   *  Differences between the font passed to the constructor and the directory's font, or null if no
+   *  font was passed
+   */
+  HersheyFont.Changes getChanges () {
+    return initial;
+  }
+
+  File getDirectory () {
+    return dir.toFile();
+  }
+
+  /**
+   *  Start watching
+   *  @param listener called on the event dispatch thread with each updated font, until close() is called
+   */
+  void start (Listener listener) {
+    this.listener = listener;
+    thread.start();
+  }
+
+  @Override
+  public void close () throws IOException {
+    closed = true;
+    thread.interrupt();
+    watcher.close();
+  }
+
+  private boolean isSource (Path name) {
+    if (lookupFile.getName().equals(name.toString())) {
+      return true;
+    }
+    for (File file : fontFiles) {
+      if (file.getName().equals(name.toString())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   *  Wait for changes to the font's files and reload after each burst of changes
+   */
+  private void watch () {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        boolean changed = poll(watcher.take());
+        // Keep collecting events until the files have been quiet for a while
+        WatchKey key;
+        while ((key = watcher.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+          changed |= poll(key);
+        }
+        if (changed) {
+          reload();
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException ex) {
+      // Closed
+    }
+  }
+
+  private boolean poll (WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      Object name = event.context();
+      changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name instanceof Path && isSource((Path) name);
+    }
+    key.reset();
+    return changed;
+  }
+
+  private void reload () {
+    long start = Diagnostics.start();
+    Object event = Diagnostics.begin(Diagnostics.Stage.FONT_RELOAD);
+    try {
+      HersheyFont.Changes changes = font.update(fontFiles, lookupFile);
+      if (changes.isEmpty()) {
+        return;
+      }
+      font = changes.font;
+      Diagnostics.end(Diagnostics.Stage.FONT_RELOAD, start, event, changes.codes.size(),
+                      dir + " (" + changes.families.size() + " families, " + changes.reused + " decoded glyphs reused)");
+      if (!closed) {
+        SwingUtilities.invokeLater(() -> {
+          if (!closed) {
+            listener.fontChanged(changes);
+          }
+        });
+      }
+    } catch (IOException | RuntimeException ex) {
+      ex.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,181 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ *  Cache of thumbnail images for the "Find Glyph" menus.  All 96 glyphs of a family are rendered once
+ *  into a single sprite sheet and handed out as lightweight icons that paint their cell of the sheet.
+ *  Sheets are kept in a bounded LRU cache and can be rendered ahead of time on a background thread.
+ */
+class GlyphAtlas {
+  static final int                            CELL_WIDTH = 24, CELL_HEIGHT = 26;
+  private static final int                    COLUMNS = 8, ROWS = 12;
+  private volatile HersheyFont                font;
+  private final int                           capacity;
+  private final Map<String,FutureTask<Sheet>> sheets;
+  private final ExecutorService               warmer = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "GlyphAtlas");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+
+  /**
+   *  @param font glyph source
+   *  @param capacity maximum number of family sheets to keep
+   */
+  GlyphAtlas (HersheyFont font, int capacity) {
+    this.font = font;
+    this.capacity = capacity;
+    sheets = new LinkedHashMap<String,FutureTask<Sheet>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry (Map.Entry<String,FutureTask<Sheet>> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   *  Get thumbnail icons for the 96 glyphs (ASCII 0x20 - 0x7F) of a family, rendering the family's
+   *  sheet if it isn't cached (or waiting for it if it's being pre-warmed).  A sheet that failed to render
+   *  isn't kept, so the next call renders it again.
+   */
+  Icon[] getIcons (String family) {
+    FutureTask<Sheet> task = getTask(family);
+    task.run();
+    try {
+      return task.get().icons;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    } catch (ExecutionException ex) {
+      discard(family, task);
+      throw new IllegalStateException(ex.getCause());
+    } catch (CancellationException ex) {
+      discard(family, task);
+      throw ex;
+    }
+  }
+
+  /**
+   *  Drop a family's task from the cache, unless it has already been replaced
+   */
+  private synchronized void discard (String family, FutureTask<Sheet> task) {
+    sheets.remove(family, task);
+  }
+
+  /**
+   *  Render sheets for families in the background, in order, until the cache is full
+   */
+  void prewarm (Collection<String> families) {
+    int count = 0;
+    for (String family : families) {
+      if (count++ >= capacity) {
+        break;
+      }
+      warmer.execute(getTask(family));
+    }
+  }
+
+  /**
+   *  Switch to an updated font.  Sheets for changed families are dropped and, if they were cached,
+   *  rendered again in the background; other families keep their sheets.
+   *  @param families names of families whose glyphs or mappings changed
+   */
+  synchronized void update (HersheyFont font, Set<String> families) {
+    this.font = font;
+    for (String family : families) {
+      if (sheets.remove(family) != null && font.getFamilies().containsKey(family)) {
+        warmer.execute(getTask(family));
+      }
+    }
+  }
+
+  private synchronized FutureTask<Sheet> getTask (String family) {
+    HersheyFont font = this.font;
+    return sheets.computeIfAbsent(family, name -> new FutureTask<>(() -> {
+      long start = Diagnostics.start();
+      Object event = Diagnostics.begin(Diagnostics.Stage.THUMBNAILS);
+      Sheet sheet = new Sheet(font, font.getFamilies().get(name));
+      Diagnostics.end(Diagnostics.Stage.THUMBNAILS, start, event, sheet.icons.length, name);
+      return sheet;
+    }));
+  }
+
+  /**
+   *  Render one glyph thumbnail centered in a cell.  This matches the look of the original per glyph
+   *  thumbnail images: a 1 pixel dark gray antialiased stroke on white.
+   */
+  static void drawThumbnail (Graphics2D g2, Shape path, int x, int y) {
+    g2.setColor(Color.white);
+    g2.fillRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+    g2.setColor(Color.darkGray);
+    g2.setClip(x, y, CELL_WIDTH, CELL_HEIGHT);
+    AffineTransform at = AffineTransform.getTranslateInstance(x + CELL_WIDTH / 2.0, y + CELL_HEIGHT / 2.0);
+    g2.draw(at.createTransformedShape(path));
+    g2.setClip(null);
+  }
+
+  /**
+   *  Sprite sheet with one cell per glyph
+   */
+  private static class Sheet {
+    private final BufferedImage image;
+    private final Icon[]        icons = new Icon[COLUMNS * ROWS];
+
+    Sheet (HersheyFont font, int[] codes) {
+      image = new BufferedImage(COLUMNS * CELL_WIDTH, ROWS * CELL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g2 = image.createGraphics();
+      RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      hints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      g2.setRenderingHints(hints);
+      g2.setStroke(new BasicStroke((1.0f)));
+      GlyphDetail detail = GlyphDetail.get(font);
+      for (int ii = 0; ii < icons.length; ii++) {
+        int x = (ii % COLUMNS) * CELL_WIDTH;
+        int y = (ii / COLUMNS) * CELL_HEIGHT;
+        int gdx = ii < codes.length ? font.indexOf(codes[ii]) : -1;
+        if (gdx >= 0) {
+          drawThumbnail(g2, detail.getPath(gdx, 1), x, y);
+        } else {
+          g2.setColor(Color.white);
+          g2.fillRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+        }
+        icons[ii] = new Thumbnail(image, x, y);
+      }
+      g2.dispose();
+    }
+  }
+
+  /**
+   *  Icon that paints one cell of a sheet
+   */
+  private static class Thumbnail implements Icon {
+    private final BufferedImage image;
+    private final int           x, y;
+
+    Thumbnail (BufferedImage image, int x, int y) {
+      this.image = image;
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override
+    public void paintIcon (Component c, Graphics g, int dx, int dy) {
+      g.drawImage(image, dx, dy, dx + CELL_WIDTH, dy + CELL_HEIGHT, x, y, x + CELL_WIDTH, y + CELL_HEIGHT, null);
+    }
+
+    @Override
+    public int getIconWidth () {
+      return CELL_WIDTH;
+    }
+
+    @Override
+    public int getIconHeight () {
+      return CELL_HEIGHT;
+    }
+  }
+}
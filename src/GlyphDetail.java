@@ -0,0 +1,267 @@
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.*;
+
+/**
+ *  Level of detail cache of glyph geometry.  Drawing code asks for a glyph at the scale it will be
+ *  drawn (device pixels per font unit) and gets a path suited to that scale:
+ *  <pre>
+ *    scale below 2     simplified: strokes shorter than half a pixel are dropped and the rest are
+ *                      decimated with Douglas-Peucker to within a quarter pixel
+ *    2 to 16           the glyph's own polylines
+ *    16 and above      with smoothing on, the polylines fitted with Catmull-Rom curves through their
+ *                      vertices (sharp corners are kept), otherwise the polylines
+ *  </pre>
+ *  Scales are bucketed by powers of two, so each glyph has at most a few entries.  Entries are built
+ *  lazily and kept in an LRU cache bounded by the approximate size of their coordinates.  Returned
+ *  paths are shared and must not be modified.
+ */
+class GlyphDetail {
+  private static final int                          MIN_LEVEL = -4, FULL = 1, SMOOTH = 4;
+  private static final double                       TOLERANCE = 0.25;         // Maximum decimation error in pixels
+  private static final double                       MIN_STROKE = 0.5;         // Shortest stroke kept in pixels
+  private static final double                       CORNER = Math.cos(Math.toRadians(50));
+  private final HersheyFont                         font;
+  private final long                                maxBytes;
+  private long                                      bytes;
+  private final LinkedHashMap<Long,Path2D.Double>   cache = new LinkedHashMap<>(256, 0.75f, true);
+
+  /**
+   *  @param maxBytes approximate limit on the memory used by cached paths
+   */
+  GlyphDetail (HersheyFont font, long maxBytes) {
+    this.font = font;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   *  Get the cache shared by all users of a font (limited to 4 MB)
+   */
+  static GlyphDetail get (HersheyFont font) {
+    return font.getDetail();
+  }
+
+  /**
+   *  Get a glyph's path for drawing at a scale, without smoothing
+   *  @param idx glyph index
+   *  @param scale device pixels per font unit
+   */
+  Path2D.Double getPath (int idx, double scale) {
+    return getPath(idx, scale, false);
+  }
+
+  /**
+   *  Get a glyph's path for drawing at a scale
+   *  @param idx glyph index
+   *  @param scale device pixels per font unit
+   *  @param smooth true to fit curves to the polylines at large scales
+   */
+  Path2D.Double getPath (int idx, double scale, boolean smooth) {
+    int level = getLevel(scale);
+    if (level >= FULL) {
+      level = smooth && level >= SMOOTH ? SMOOTH : FULL;
+    }
+    Long key = ((long) idx << 8) | (level & 0xFF);
+    synchronized (this) {
+      Path2D.Double path = cache.get(key);
+      if (path != null) {
+        return path;
+      }
+    }
+    // Build outside the lock, so a slow build doesn't hold up other threads
+    Path2D.Double path;
+    if (level == SMOOTH) {
+      path = buildSmooth(idx);
+    } else if (level == FULL) {
+      path = font.getPath(idx);
+    } else {
+      path = buildSimplified(idx, Math.scalb(1.0, level + 1));
+    }
+    synchronized (this) {
+      Path2D.Double old = cache.put(key, path);
+      bytes += getSize(path) - (old != null ? getSize(old) : 0);
+      Iterator<Path2D.Double> iter = cache.values().iterator();
+      while (bytes > maxBytes && iter.hasNext()) {
+        Path2D.Double eldest = iter.next();
+        if (eldest != path) {
+          bytes -= getSize(eldest);
+          iter.remove();
+        }
+      }
+    }
+    return path;
+  }
+
+  /**
+   *  Bucket a scale by powers of two: level n covers scales from 2^n up to 2^(n + 1)
+   */
+  private static int getLevel (double scale) {
+    if (!(scale > 0)) {
+      return MIN_LEVEL;
+    }
+    return Math.max(MIN_LEVEL, Math.min(SMOOTH, Math.getExponent(scale)));
+  }
+
+  /**
+   *  Approximate memory used by a path: its coordinates, segment types and object overhead
+   */
+  private static long getSize (Path2D.Double path) {
+    long size = 64;
+    double[] coords = new double[6];
+    for (PathIterator iter = path.getPathIterator(null); !iter.isDone(); iter.next()) {
+      size += iter.currentSegment(coords) == PathIterator.SEG_CUBICTO ? 49 : 17;
+    }
+    return size;
+  }
+
+  /**
+   *  Get a glyph's strokes as lists of x,y coordinates
+   */
+  private List<double[]> getStrokes (int idx) {
+    List<double[]> strokes = new ArrayList<>();
+    byte[] verts = font.getVertices(idx);
+    int start = font.getOffset(idx) * 2, end = start + font.getLength(idx) * 2;
+    for (int ii = start; ii < end; ) {
+      int jj = ii;
+      while (jj < end && verts[jj] != HersheyFont.PEN_UP) {
+        jj += 2;
+      }
+      if (jj > ii) {
+        double[] stroke = new double[jj - ii];
+        for (int kk = ii; kk < jj; kk++) {
+          stroke[kk - ii] = verts[kk];
+        }
+        strokes.add(stroke);
+      }
+      ii = jj + 2;
+    }
+    return strokes;
+  }
+
+  /**
+   *  Build a simplified path for drawing at scales up to maxScale
+   */
+  private Path2D.Double buildSimplified (int idx, double maxScale) {
+    double tolerance = TOLERANCE / maxScale, minStroke = MIN_STROKE / maxScale;
+    Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, Math.max(font.getLength(idx), 1));
+    for (double[] stroke : getStrokes(idx)) {
+      // Drop strokes that would cover less than half a pixel in both directions
+      double x1 = stroke[0], y1 = stroke[1], x2 = x1, y2 = y1;
+      for (int ii = 2; ii < stroke.length; ii += 2) {
+        x1 = Math.min(x1, stroke[ii]);
+        y1 = Math.min(y1, stroke[ii + 1]);
+        x2 = Math.max(x2, stroke[ii]);
+        y2 = Math.max(y2, stroke[ii + 1]);
+      }
+      if (x2 - x1 < minStroke && y2 - y1 < minStroke) {
+        continue;
+      }
+      int count = stroke.length / 2;
+      boolean[] keep = new boolean[count];
+      keep[0] = keep[count - 1] = true;
+      decimate(stroke, 0, count - 1, tolerance * tolerance, keep);
+      path.moveTo(stroke[0], stroke[1]);
+      for (int ii = 1; ii < count; ii++) {
+        if (keep[ii]) {
+          path.lineTo(stroke[ii * 2], stroke[ii * 2 + 1]);
+        }
+      }
+    }
+    return path;
+  }
+
+  /**
+   *  Douglas-Peucker: keep the point between first and last that's furthest from the line joining them
+   *  if it's further than the tolerance, then repeat on each side of it
+   */
+  private static void decimate (double[] pts, int first, int last, double tolSq, boolean[] keep) {
+    if (last - first < 2) {
+      return;
+    }
+    double ax = pts[first * 2], ay = pts[first * 2 + 1];
+    double dx = pts[last * 2] - ax, dy = pts[last * 2 + 1] - ay;
+    double lenSq = dx * dx + dy * dy;
+    int far = -1;
+    double farSq = tolSq;
+    for (int ii = first + 1; ii < last; ii++) {
+      double px = pts[ii * 2] - ax, py = pts[ii * 2 + 1] - ay;
+      double distSq;
+      if (lenSq == 0) {
+        distSq = px * px + py * py;
+      } else {
+        double tt = Math.max(0, Math.min(1, (px * dx + py * dy) / lenSq));
+        double ex = px - tt * dx, ey = py - tt * dy;
+        distSq = ex * ex + ey * ey;
+      }
+      if (distSq > farSq) {
+        far = ii;
+        farSq = distSq;
+      }
+    }
+    if (far >= 0) {
+      keep[far] = true;
+      decimate(pts, first, far, tolSq, keep);
+      decimate(pts, far, last, tolSq, keep);
+    }
+  }
+
+  /**
+   *  Build a smoothed path.  Each stroke is split at its corners (where it turns by more than 50
+   *  degrees) and each piece is drawn as a Catmull-Rom spline through its vertices, converted to cubic
+   *  Bezier segments.  Tangents are scaled to the length of each segment, so a long straight segment
+   *  next to a tight curve doesn't bulge, and a closed stroke is smoothed through its start point.
+   */
+  private Path2D.Double buildSmooth (int idx) {
+    Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, Math.max(font.getLength(idx), 1) * 3);
+    for (double[] stroke : getStrokes(idx)) {
+      int count = stroke.length / 2;
+      path.moveTo(stroke[0], stroke[1]);
+      if (count < 3) {
+        if (count == 2) {
+          path.lineTo(stroke[2], stroke[3]);
+        }
+        continue;
+      }
+      boolean closed = stroke[0] == stroke[stroke.length - 2] && stroke[1] == stroke[stroke.length - 1];
+      // Unit tangent at each vertex, or NaN at ends and corners
+      double[] tan = new double[count * 2];
+      for (int ii = 0; ii < count; ii++) {
+        int prev = ii > 0 ? ii - 1 : closed ? count - 2 : -1;
+        int next = ii < count - 1 ? ii + 1 : closed ? 1 : -1;
+        tan[ii * 2] = tan[ii * 2 + 1] = Double.NaN;
+        if (prev >= 0 && next >= 0) {
+          double ix = stroke[ii * 2] - stroke[prev * 2], iy = stroke[ii * 2 + 1] - stroke[prev * 2 + 1];
+          double ox = stroke[next * 2] - stroke[ii * 2], oy = stroke[next * 2 + 1] - stroke[ii * 2 + 1];
+          double il = Math.hypot(ix, iy), ol = Math.hypot(ox, oy);
+          if (il > 0 && ol > 0 && (ix * ox + iy * oy) / (il * ol) > CORNER) {
+            double tx = ix / il + ox / ol, ty = iy / il + oy / ol;
+            double tl = Math.hypot(tx, ty);
+            tan[ii * 2] = tx / tl;
+            tan[ii * 2 + 1] = ty / tl;
+          }
+        }
+      }
+      for (int ii = 0; ii < count - 1; ii++) {
+        double x1 = stroke[ii * 2], y1 = stroke[ii * 2 + 1], x2 = stroke[ii * 2 + 2], y2 = stroke[ii * 2 + 3];
+        double len = Math.hypot(x2 - x1, y2 - y1);
+        double t1x = tan[ii * 2], t1y = tan[ii * 2 + 1], t2x = tan[ii * 2 + 2], t2y = tan[ii * 2 + 3];
+        if (Double.isNaN(t1x) && Double.isNaN(t2x) || len == 0) {
+          path.lineTo(x2, y2);
+          continue;
+        }
+        // At an end or corner, aim the tangent along the segment
+        if (Double.isNaN(t1x)) {
+          t1x = (x2 - x1) / len;
+          t1y = (y2 - y1) / len;
+        }
+        if (Double.isNaN(t2x)) {
+          t2x = (x2 - x1) / len;
+          t2y = (y2 - y1) / len;
+        }
+        double hh = len / 3;
+        path.curveTo(x1 + t1x * hh, y1 + t1y * hh, x2 - t2x * hh, y2 - t2y * hh, x2, y2);
+      }
+    }
+    return path;
+  }
+}
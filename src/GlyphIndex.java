@@ -0,0 +1,446 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  Shape similarity index over every glyph in a font.  Each glyph's strokes are scaled to fit a unit
+ *  square (keeping their aspect ratio), rasterized into a small, slightly blurred ink density grid and
+ *  normalized, giving a feature vector that's compared by Euclidean distance.  The vectors are computed
+ *  once and stored in a vantage point tree (a ball tree that splits each node at the median distance
+ *  from one of its points), so nearest neighbour and radius queries visit only a fraction of the
+ *  glyphs.  Queries can be an existing glyph or a hand drawn sketch collected with a {@link Sketch}.
+ *  Glyphs with no strokes (such as spaces) aren't indexed.  Once built, the index is read only and can
+ *  be queried by several threads.
+ */
+class GlyphIndex {
+  static final int          GRID = 12;
+  static final int          DIM = GRID * GRID;
+  private final float[]     features;             // DIM values per glyph, by glyph index
+  private final boolean[]   indexed;              // True if the glyph has strokes
+  // Vantage point tree stored in place: the node for range lo..hi-1 is items[lo], its inside subtree is
+  // lo+1..mid-1 and its outside subtree is mid..hi-1, with mid = lo + 1 + (hi - lo - 1) / 2
+  private final int[]       items;
+  private final float[]     radius;               // Median distance from items[lo] to its subtrees
+
+  /**
+   *  Collects strokes, as glyph vectors or as a sketch, and turns them into a feature vector
+   */
+  static class Sketch extends HersheyFont.SegmentSink {
+    private float[] segs = new float[256];
+    private int     count;                        // Values used in segs (4 per segment)
+
+    void clear () {
+      count = 0;
+    }
+
+    boolean isEmpty () {
+      return count == 0;
+    }
+
+    @Override
+    void segment (int x1, int y1, int x2, int y2) {
+      if (count + 4 > segs.length) {
+        segs = Arrays.copyOf(segs, segs.length * 2);
+      }
+      segs[count++] = x1;
+      segs[count++] = y1;
+      segs[count++] = x2;
+      segs[count++] = y2;
+    }
+
+    /**
+     *  Compute the feature vector of the collected strokes
+     *  @param out receives DIM values from off
+     *  @return false if there are no strokes (out is zero filled)
+     */
+    boolean getFeature (float[] out, int off) {
+      Arrays.fill(out, off, off + DIM, 0);
+      if (count == 0) {
+        return false;
+      }
+      float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+      for (int ii = 0; ii < count; ii += 2) {
+        minX = Math.min(minX, segs[ii]);
+        maxX = Math.max(maxX, segs[ii]);
+        minY = Math.min(minY, segs[ii + 1]);
+        maxY = Math.max(maxY, segs[ii + 1]);
+      }
+      // Scale to fit GRID - 1 cells, centered, so bilinear splats stay inside the grid
+      float size = Math.max(Math.max(maxX - minX, maxY - minY), 1e-3f);
+      float scale = (GRID - 1) / size;
+      float cx = (minX + maxX) / 2, cy = (minY + maxY) / 2;
+      float[] grid = new float[DIM];
+      for (int ii = 0; ii < count; ii += 4) {
+        float x1 = (segs[ii] - cx) * scale + (GRID - 1) / 2f;
+        float y1 = (segs[ii + 1] - cy) * scale + (GRID - 1) / 2f;
+        float x2 = (segs[ii + 2] - cx) * scale + (GRID - 1) / 2f;
+        float y2 = (segs[ii + 3] - cy) * scale + (GRID - 1) / 2f;
+        float len = (float) Math.hypot(x2 - x1, y2 - y1);
+        // Sample about four points per cell, each weighted by the length it stands for
+        int steps = Math.max(1, (int) Math.ceil(len * 4));
+        float weight = len > 0 ? len / steps : 1;
+        for (int jj = 0; jj <= steps; jj++) {
+          float tt = (float) jj / steps;
+          float ww = jj == 0 || jj == steps ? weight / 2 : weight;
+          splat(grid, x1 + (x2 - x1) * tt, y1 + (y2 - y1) * tt, ww);
+        }
+      }
+      blur(grid, out, off);
+      double sum = 0;
+      for (int ii = off; ii < off + DIM; ii++) {
+        sum += out[ii] * out[ii];
+      }
+      float norm = (float) (1 / Math.sqrt(sum));
+      for (int ii = off; ii < off + DIM; ii++) {
+        out[ii] *= norm;
+      }
+      return true;
+    }
+
+    private static void splat (float[] grid, float x, float y, float weight) {
+      int gx = Math.min((int) x, GRID - 2);
+      int gy = Math.min((int) y, GRID - 2);
+      float fx = x - gx, fy = y - gy;
+      int ii = gy * GRID + gx;
+      grid[ii] += weight * (1 - fx) * (1 - fy);
+      grid[ii + 1] += weight * fx * (1 - fy);
+      grid[ii + GRID] += weight * (1 - fx) * fy;
+      grid[ii + GRID + 1] += weight * fx * fy;
+    }
+
+    /**
+     *  Separable 1,2,1 blur, so strokes a little off from each other still overlap
+     */
+    private static void blur (float[] grid, float[] out, int off) {
+      float[] tmp = new float[DIM];
+      for (int yy = 0; yy < GRID; yy++) {
+        for (int xx = 0; xx < GRID; xx++) {
+          int ii = yy * GRID + xx;
+          tmp[ii] = 2 * grid[ii] + (xx > 0 ? grid[ii - 1] : 0) + (xx < GRID - 1 ? grid[ii + 1] : 0);
+        }
+      }
+      for (int yy = 0; yy < GRID; yy++) {
+        for (int xx = 0; xx < GRID; xx++) {
+          int ii = yy * GRID + xx;
+          out[off + ii] = 2 * tmp[ii] + (yy > 0 ? tmp[ii - GRID] : 0) + (yy < GRID - 1 ? tmp[ii + GRID] : 0);
+        }
+      }
+    }
+  }
+
+  /**
+   *  Compute feature vectors for every glyph in font and build the tree
+   */
+  GlyphIndex (HersheyFont font) {
+    int count = font.glyphCount();
+    features = new float[count * DIM];
+    indexed = new boolean[count];
+    Sketch shape = new Sketch();
+    int size = 0;
+    for (int ii = 0; ii < count; ii++) {
+      shape.clear();
+      font.visit(ii, shape);
+      if (indexed[ii] = shape.getFeature(features, ii * DIM)) {
+        size++;
+      }
+    }
+    items = new int[size];
+    radius = new float[size];
+    for (int ii = 0, jj = 0; ii < count; ii++) {
+      if (indexed[ii]) {
+        items[jj++] = ii;
+      }
+    }
+    build(0, size, new float[size]);
+  }
+
+  /**
+   *  Arrange items[lo..hi-1] into a subtree.  The first item is the vantage point and the rest are
+   *  partitioned around their median distance from it.  dist is scratch space.
+   */
+  private void build (int lo, int hi, float[] dist) {
+    if (hi - lo < 2) {
+      return;
+    }
+    // Use the item farthest from the range's first item as the vantage point, since points near the
+    // edge of the set split it better than ones near its center
+    float far = -1;
+    int farthest = lo;
+    for (int ii = lo + 1; ii < hi; ii++) {
+      float dd = distance(items[lo], items[ii]);
+      if (dd > far) {
+        far = dd;
+        farthest = ii;
+      }
+    }
+    swap(lo, farthest);
+    int vp = items[lo];
+    for (int ii = lo + 1; ii < hi; ii++) {
+      dist[ii] = distance(vp, items[ii]);
+    }
+    int mid = lo + 1 + (hi - lo - 1) / 2;
+    select(dist, lo + 1, hi - 1, mid);
+    radius[lo] = dist[mid];
+    build(lo + 1, mid, dist);
+    build(mid, hi, dist);
+  }
+
+  private void swap (int ii, int jj) {
+    int tmp = items[ii];
+    items[ii] = items[jj];
+    items[jj] = tmp;
+  }
+
+  /**
+   *  Quickselect so dist[nth] (and items[nth]) holds the value that would be there if lo..hi were sorted
+   *  by dist, with smaller distances before it and larger after
+   */
+  private void select (float[] dist, int lo, int hi, int nth) {
+    while (lo < hi) {
+      float pivot = dist[(lo + hi) >>> 1];
+      int ii = lo, jj = hi;
+      while (ii <= jj) {
+        while (dist[ii] < pivot) {
+          ii++;
+        }
+        while (dist[jj] > pivot) {
+          jj--;
+        }
+        if (ii <= jj) {
+          float tmp = dist[ii];
+          dist[ii] = dist[jj];
+          dist[jj] = tmp;
+          swap(ii++, jj--);
+        }
+      }
+      if (nth <= jj) {
+        hi = jj;
+      } else if (nth >= ii) {
+        lo = ii;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private float distance (int glyph1, int glyph2) {
+    return distance(features, glyph1 * DIM, features, glyph2 * DIM);
+  }
+
+  private static float distance (float[] f1, int off1, float[] f2, int off2) {
+    float sum = 0;
+    for (int ii = 0; ii < DIM; ii++) {
+      float dd = f1[off1 + ii] - f2[off2 + ii];
+      sum += dd * dd;
+    }
+    return (float) Math.sqrt(sum);
+  }
+
+  /**
+   *  Number of glyphs in the index (glyphs with at least one stroke)
+   */
+  int size () {
+    return items.length;
+  }
+
+  /**
+   *  Find the glyphs most similar to an existing glyph
+   *  @param glyph glyph index
+   *  @param k maximum number of results
+   *  @return glyph indexes, most similar first, not including glyph itself
+   */
+  int[] findSimilar (int glyph, int k) {
+    if (!indexed[glyph]) {
+      return new int[0];
+    }
+    return search(Arrays.copyOfRange(features, glyph * DIM, glyph * DIM + DIM), k, glyph);
+  }
+
+  /**
+   *  Find the glyphs most similar to a sketch
+   *  @param sketch strokes in any coordinate system with y increasing downward
+   *  @param k maximum number of results
+   *  @return glyph indexes, most similar first
+   */
+  int[] findSimilar (Sketch sketch, int k) {
+    float[] query = new float[DIM];
+    if (!sketch.getFeature(query, 0)) {
+      return new int[0];
+    }
+    return search(query, k, -1);
+  }
+
+  /**
+   *  k nearest neighbour search.  Results are kept in a max heap of the best k so far, and a subtree
+   *  is skipped when the ball it lies in (or outside of) can't hold anything closer than the kth best.
+   */
+  private int[] search (float[] query, int k, int exclude) {
+    k = Math.min(k, items.length);
+    int[] heap = new int[k];
+    float[] heapDist = new float[k];
+    int size = 0;
+    // Explicit stack of lo, hi ranges
+    int[] stack = new int[64];
+    int sp = 0;
+    if (items.length > 0) {
+      stack[sp++] = 0;
+      stack[sp++] = items.length;
+    }
+    while (sp > 0) {
+      int hi = stack[--sp];
+      int lo = stack[--sp];
+      if (lo >= hi) {
+        continue;
+      }
+      int vp = items[lo];
+      float dd = distance(query, 0, features, vp * DIM);
+      if (vp != exclude) {
+        if (size < k) {
+          heap[size] = vp;
+          heapDist[size] = dd;
+          siftUp(heap, heapDist, size++);
+        } else if (dd < heapDist[0]) {
+          heap[0] = vp;
+          heapDist[0] = dd;
+          siftDown(heap, heapDist, size);
+        }
+      }
+      float tau = size < k ? Float.MAX_VALUE : heapDist[0];
+      int mid = lo + 1 + (hi - lo - 1) / 2;
+      if (sp + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, stack.length * 2);
+      }
+      // Push the less likely side first so the more likely side is searched first and tightens tau
+      boolean inside = dd < radius[lo];
+      if (inside) {
+        if (dd + tau >= radius[lo]) {
+          stack[sp++] = mid;
+          stack[sp++] = hi;
+        }
+        stack[sp++] = lo + 1;
+        stack[sp++] = mid;
+      } else {
+        if (dd - tau <= radius[lo]) {
+          stack[sp++] = lo + 1;
+          stack[sp++] = mid;
+        }
+        stack[sp++] = mid;
+        stack[sp++] = hi;
+      }
+    }
+    // Pop the heap into ascending order
+    int[] result = new int[size];
+    for (int ii = size - 1; ii >= 0; ii--) {
+      result[ii] = heap[0];
+      heap[0] = heap[ii];
+      heapDist[0] = heapDist[ii];
+      siftDown(heap, heapDist, ii);
+    }
+    return result;
+  }
+
+  private static void siftUp (int[] heap, float[] dist, int ii) {
+    while (ii > 0) {
+      int parent = (ii - 1) / 2;
+      if (dist[parent] >= dist[ii]) {
+        break;
+      }
+      swap(heap, dist, parent, ii);
+      ii = parent;
+    }
+  }
+
+  private static void siftDown (int[] heap, float[] dist, int size) {
+    int ii = 0;
+    while (true) {
+      int child = ii * 2 + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && dist[child + 1] > dist[child]) {
+        child++;
+      }
+      if (dist[ii] >= dist[child]) {
+        break;
+      }
+      swap(heap, dist, ii, child);
+      ii = child;
+    }
+  }
+
+  private static void swap (int[] heap, float[] dist, int ii, int jj) {
+    int tmp = heap[ii];
+    heap[ii] = heap[jj];
+    heap[jj] = tmp;
+    float ftmp = dist[ii];
+    dist[ii] = dist[jj];
+    dist[jj] = ftmp;
+  }
+
+  /**
+   *  Find glyphs within maxDistance of glyph
+   */
+  private void searchRadius (int glyph, float maxDistance, List<Integer> out) {
+    int off = glyph * DIM;
+    int[] stack = new int[64];
+    int sp = 0;
+    stack[sp++] = 0;
+    stack[sp++] = items.length;
+    while (sp > 0) {
+      int hi = stack[--sp];
+      int lo = stack[--sp];
+      if (lo >= hi) {
+        continue;
+      }
+      int vp = items[lo];
+      float dd = distance(features, off, features, vp * DIM);
+      if (dd <= maxDistance && vp != glyph) {
+        out.add(vp);
+      }
+      int mid = lo + 1 + (hi - lo - 1) / 2;
+      if (sp + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, stack.length * 2);
+      }
+      if (dd - maxDistance <= radius[lo]) {
+        stack[sp++] = lo + 1;
+        stack[sp++] = mid;
+      }
+      if (dd + maxDistance >= radius[lo]) {
+        stack[sp++] = mid;
+        stack[sp++] = hi;
+      }
+    }
+  }
+
+  /**
+   *  Find pairs of different glyphs (distinct Hershey codes) whose shapes are nearly the same, such as a
+   *  Latin capital and the Greek or Cyrillic letter drawn identically in another family
+   *  @param maxDistance largest feature distance that counts as a duplicate (0 = identical shapes; the
+   *  distance between two normalized vectors is at most sqrt(2))
+   *  @return pairs of glyph indexes {a, b} with a &lt; b, in glyph order
+   */
+  List<int[]> findNearDuplicates (float maxDistance) {
+    List<int[]> pairs = new ArrayList<>();
+    List<Integer> near = new ArrayList<>();
+    for (int ii = 0; ii < indexed.length; ii++) {
+      if (indexed[ii]) {
+        near.clear();
+        searchRadius(ii, maxDistance, near);
+        near.sort(null);
+        for (int jj : near) {
+          if (jj > ii) {
+            pairs.add(new int[] {ii, jj});
+          }
+        }
+      }
+    }
+    return pairs;
+  }
+
+  /**
+   *  Feature distance between two glyphs, or NaN if either has no strokes
+   */
+  float getDistance (int glyph1, int glyph2) {
+    return indexed[glyph1] && indexed[glyph2] ? distance(glyph1, glyph2) : Float.NaN;
+  }
+}
@@ -0,0 +1,387 @@
+import java.awt.Rectangle;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *  Precomputed metrics for a font: the bounds of every glyph, vertical metrics for each family and an
+ *  automatic kerning table for each family.  Glyph bounds are computed up front; family metrics and
+ *  kerning are computed the first time they're needed.
+ *
+ *  Kerning is derived from contour profiles.  For each row of font units, a glyph's left profile is the
+ *  distance from the left edge of its advance box to its leftmost ink and its right profile the distance
+ *  from its rightmost ink to the right edge.  The gap between two glyphs set side by side is the smallest
+ *  sum of the first's right profile and the second's left profile over the rows where both have ink (the
+ *  second's profile is widened by a row on each side, so diagonals don't interlock).  Pairs whose gap is
+ *  wider than the gap between two 'H's are moved closer, by up to half of the narrower glyph's advance.
+ *  Glyph bounds, each family's profiles and all 96 x 96 pairs of every family are computed in parallel
+ *  on the fork-join pool, and the kerning is saved to a cache file tagged with a hash of the font's
+ *  content, so it's recomputed only when the font changes.  The cache file is "hershey.metrics" in the user's home directory, or the file named
+ *  by the "hershey.metrics" system property.
+ */
+class GlyphMetrics {
+  private static final int                          MAGIC = 0x484B524E;       // "HKRN"
+  private static final int                          VERSION = 1;
+  private static final int                          ROWS = 256;               // Profile rows, for y = -128 to 127
+  private final HersheyFont                         font;
+  private final short[]                             minX, minY, maxX, maxY;   // By glyph index
+  private final Map<String,Family>                  families = new HashMap<>();
+  private Map<String,byte[]>                        kerning;
+
+  /**
+   *  Vertical metrics of a family.  Distances are in font units, measured up from the baseline, which
+   *  is the bottom of the family's 'H' (in Hershey coordinates, with y down).
+   */
+  static class Family {
+    final int       baseline;
+    final int       capHeight, xHeight, ascent, descent;
+    final Rectangle bounds;         // Union of the bounds of the family's glyphs
+
+    Family (int baseline, int capHeight, int xHeight, int ascent, int descent, Rectangle bounds) {
+      this.baseline = baseline;
+      this.capHeight = capHeight;
+      this.xHeight = xHeight;
+      this.ascent = ascent;
+      this.descent = descent;
+      this.bounds = bounds;
+    }
+  }
+
+  GlyphMetrics (HersheyFont font) {
+    this.font = font;
+    int count = font.glyphCount();
+    minX = new short[count];
+    minY = new short[count];
+    maxX = new short[count];
+    maxY = new short[count];
+    ForkJoinPool.commonPool().invoke(new BoundsTask(0, count));
+  }
+
+  /**
+   *  Get the metrics shared by all users of a font
+   */
+  static GlyphMetrics get (HersheyFont font) {
+    return font.getMetrics();
+  }
+
+  /**
+   *  Get a glyph's ink bounds (all zero for a glyph with no strokes)
+   */
+  Rectangle getBounds (int idx) {
+    return new Rectangle(minX[idx], minY[idx], maxX[idx] - minX[idx], maxY[idx] - minY[idx]);
+  }
+
+  boolean isEmpty (int idx) {
+    return font.getLength(idx) == 0;
+  }
+
+  /**
+   *  Get vertical metrics for a family
+   */
+  synchronized Family getFamily (String name) {
+    Family family = families.get(name);
+    if (family == null) {
+      int[] glyphs = font.getGlyphTable(name);
+      int top = 0, bottom = 0, left = 0, right = 0;
+      boolean first = true;
+      for (int gdx : glyphs) {
+        if (gdx >= 0 && !isEmpty(gdx)) {
+          top = first ? minY[gdx] : Math.min(top, minY[gdx]);
+          bottom = first ? maxY[gdx] : Math.max(bottom, maxY[gdx]);
+          left = first ? minX[gdx] : Math.min(left, minX[gdx]);
+          right = first ? maxX[gdx] : Math.max(right, maxX[gdx]);
+          first = false;
+        }
+      }
+      int capH = glyphs['H' - 0x20], exX = glyphs['x' - 0x20];
+      int baseline = capH >= 0 && !isEmpty(capH) ? maxY[capH] : bottom;
+      int capHeight = capH >= 0 && !isEmpty(capH) ? baseline - minY[capH] : baseline - top;
+      int xHeight = exX >= 0 && !isEmpty(exX) ? baseline - minY[exX] : capHeight;
+      family = new Family(baseline, capHeight, xHeight, baseline - top, bottom - baseline,
+                          new Rectangle(left, top, right - left, bottom - top));
+      families.put(name, family);
+    }
+    return family;
+  }
+
+  /**
+   *  Get a family's kerning table, computing (or loading) the tables for all families the first time
+   *  @return 96 x 96 adjustments in font units, indexed by (first - 0x20) * 96 + (second - 0x20), to add to
+   *  the advance of the first character when it's followed by the second
+   */
+  byte[] getKerning (String family) {
+    Map<String,byte[]> tables;
+    synchronized (this) {
+      if (kerning == null) {
+        kerning = loadKerning();
+      }
+      tables = kerning;
+    }
+    byte[] table = tables.get(family);
+    if (table == null) {
+      throw new IllegalArgumentException("Unknown family: " + family);
+    }
+    return table;
+  }
+
+  private Map<String,byte[]> loadKerning () {
+    File file = new File(System.getProperty("hershey.metrics", new File(System.getProperty("user.home"), "hershey.metrics").getPath()));
+    byte[] hash = getContentHash();
+    if (file.exists()) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        byte[] fileHash = new byte[hash.length];
+        if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+          in.readFully(fileHash);
+          if (Arrays.equals(hash, fileHash)) {
+            Map<String,byte[]> tables = new HashMap<>();
+            for (int ii = in.readInt(); ii > 0; ii--) {
+              String name = in.readUTF();
+              byte[] table = new byte[96 * 96];
+              in.readFully(table);
+              tables.put(name, table);
+            }
+            return tables;
+          }
+        }
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+    }
+    Map<String,byte[]> tables = computeKerning();
+    File tmp = null;
+    try {
+      // Write to a temporary file and move it into place, so readers never see a partial file
+      tmp = File.createTempFile("hershey", ".metrics", file.getAbsoluteFile().getParentFile());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(hash);
+        out.writeInt(tables.size());
+        for (Map.Entry<String,byte[]> entry : tables.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.write(entry.getValue());
+        }
+      }
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    } finally {
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+    return tables;
+  }
+
+  /**
+   *  SHA-256 of everything kerning depends on: each glyph's code, metrics and vertices, and the
+   *  family tables
+   */
+  private byte[] getContentHash () {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (int ii = 0; ii < font.glyphCount(); ii++) {
+        int code = font.getCode(ii);
+        digest.update(new byte[] {(byte) (code >> 8), (byte) code, (byte) font.getLeft(ii), (byte) font.getRight(ii)});
+        digest.update(font.getVertices(ii), font.getOffset(ii) * 2, font.getLength(ii) * 2);
+      }
+      for (Map.Entry<String,int[]> entry : new TreeMap<>(font.getFamilies()).entrySet()) {
+        digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+        for (int code : entry.getValue()) {
+          digest.update(new byte[] {(byte) (code >> 8), (byte) code});
+        }
+      }
+      return digest.digest();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   *  Compute kerning tables for all families in parallel
+   */
+  Map<String,byte[]> computeKerning () {
+    Map<String,byte[]> tables = new HashMap<>();
+    List<FamilyTask> tasks = new ArrayList<>();
+    for (String name : font.getFamilies().keySet()) {
+      byte[] table = new byte[96 * 96];
+      tables.put(name, table);
+      tasks.add(new FamilyTask(font.getGlyphTable(name), table));
+    }
+    ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+      @Override
+      protected void compute () {
+        invokeAll(tasks);
+      }
+    });
+    return tables;
+  }
+
+  /**
+   *  Left and right contour profiles of a family's 96 glyphs, plus the reference gap between two 'H's
+   */
+  private class Profiles {
+    private final float[]   left = new float[96 * ROWS], right = new float[96 * ROWS];
+    private final int[]     advance = new int[96];
+    private final float     target;
+
+    Profiles (int[] glyphs) {
+      Arrays.fill(left, Float.NaN);
+      Arrays.fill(right, Float.NaN);
+      for (int ii = 0; ii < 96; ii++) {
+        int gdx = glyphs[ii];
+        if (gdx < 0) {
+          continue;
+        }
+        int base = ii * ROWS;
+        int gLeft = font.getLeft(gdx), gRight = font.getRight(gdx);
+        advance[ii] = gRight - gLeft;
+        font.visit(gdx, new HersheyFont.SegmentSink() {
+          void segment (int x1, int y1, int x2, int y2) {
+            if (y1 == y2) {
+              include(y1, Math.min(x1, x2));
+              include(y1, Math.max(x1, x2));
+            } else {
+              for (int yy = Math.min(y1, y2); yy <= Math.max(y1, y2); yy++) {
+                include(yy, x1 + (x2 - x1) * (float) (yy - y1) / (y2 - y1));
+              }
+            }
+          }
+
+          private void include (int yy, float xx) {
+            int row = base + yy + ROWS / 2;
+            float ll = xx - gLeft, rr = gRight - xx;
+            left[row] = Float.isNaN(left[row]) ? ll : Math.min(left[row], ll);
+            right[row] = Float.isNaN(right[row]) ? rr : Math.min(right[row], rr);
+          }
+        });
+      }
+      target = gap('H' - 0x20, 'H' - 0x20);
+    }
+
+    /**
+     *  Smallest gap between glyph slot a followed by glyph slot b, or NaN if they share no rows
+     */
+    float gap (int aa, int bb) {
+      float min = Float.NaN;
+      for (int row = 0; row < ROWS; row++) {
+        float rr = right[aa * ROWS + row];
+        if (Float.isNaN(rr)) {
+          continue;
+        }
+        for (int nn = Math.max(0, row - 1); nn <= Math.min(ROWS - 1, row + 1); nn++) {
+          float ll = left[bb * ROWS + nn];
+          if (!Float.isNaN(ll) && (Float.isNaN(min) || rr + ll < min)) {
+            min = rr + ll;
+          }
+        }
+      }
+      return min;
+    }
+  }
+
+  /**
+   *  Computes the bounds of glyphs from to to - 1, splitting the range in half until it's small enough
+   *  to do directly
+   */
+  private class BoundsTask extends RecursiveAction {
+    private final int from, to;
+
+    BoundsTask (int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute () {
+      if (to - from > 64) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new BoundsTask(from, mid), new BoundsTask(mid, to));
+        return;
+      }
+      for (int ii = from; ii < to; ii++) {
+        byte[] verts = font.getVertices(ii);
+        int x1 = Integer.MAX_VALUE, y1 = Integer.MAX_VALUE, x2 = Integer.MIN_VALUE, y2 = Integer.MIN_VALUE;
+        for (int jj = font.getOffset(ii) * 2, end = jj + font.getLength(ii) * 2; jj < end; jj += 2) {
+          if (verts[jj] != HersheyFont.PEN_UP) {
+            x1 = Math.min(x1, verts[jj]);
+            y1 = Math.min(y1, verts[jj + 1]);
+            x2 = Math.max(x2, verts[jj]);
+            y2 = Math.max(y2, verts[jj + 1]);
+          }
+        }
+        if (x1 <= x2) {
+          minX[ii] = (short) x1;
+          minY[ii] = (short) y1;
+          maxX[ii] = (short) x2;
+          maxY[ii] = (short) y2;
+        }
+      }
+    }
+  }
+
+  /**
+   *  Computes one family's kerning table: its profiles, then its pairs in parallel
+   */
+  private class FamilyTask extends RecursiveAction {
+    private final int[]   glyphs;
+    private final byte[]  table;
+
+    FamilyTask (int[] glyphs, byte[] table) {
+      this.glyphs = glyphs;
+      this.table = table;
+    }
+
+    @Override
+    protected void compute () {
+      new KernTask(new Profiles(glyphs), table, 0, 96).invoke();
+    }
+  }
+
+  /**
+   *  Computes kerning for pairs whose first character is in slots from to to - 1, splitting the range
+   *  in half until it's small enough to do directly
+   */
+  private static class KernTask extends RecursiveAction {
+    private final Profiles  profiles;
+    private final byte[]    table;
+    private final int       from, to;
+
+    KernTask (Profiles profiles, byte[] table, int from, int to) {
+      this.profiles = profiles;
+      this.table = table;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute () {
+      if (to - from > 8) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new KernTask(profiles, table, from, mid), new KernTask(profiles, table, mid, to));
+        return;
+      }
+      float target = profiles.target;
+      for (int aa = from; aa < to; aa++) {
+        for (int bb = 0; bb < 96; bb++) {
+          float gap = profiles.gap(aa, bb);
+          if (!Float.isNaN(gap) && !Float.isNaN(target) && gap > target) {
+            int limit = Math.min(profiles.advance[aa], profiles.advance[bb]) / 2;
+            table[aa * 96 + bb] = (byte) -Math.min(limit, Math.round(gap - target));
+          }
+        }
+      }
+    }
+  }
+}
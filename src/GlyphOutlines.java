@@ -0,0 +1,494 @@
+import java.awt.BasicStroke;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+
+/**
+ *  Filled outlines of glyphs drawn with a pen, for cutters and outline font tools that can't use single
+ *  line strokes.  Each glyph's strokes are widened with BasicStroke.createStrokedShape() and made into an
+ *  Area, which unions the overlapping pieces into clean contours: outer contours and holes with no
+ *  self-intersections.  Outlines are in font units and Hershey coordinates (y down, origin at the glyph's
+ *  center).
+ *  <p>
+ *  The union is slow, so outlines are computed in parallel on the fork-join pool and kept in a cache
+ *  file for each pen, in the "hershey.outlines" directory in the user's home directory (or the
+ *  directory named by the "hershey.outlines" system property).  Entries are keyed by glyph code along
+ *  with a checksum of the glyph's metrics and vertices, so a glyph edited in the font sources is
+ *  recomputed and the rest are reused.
+ */
+class GlyphOutlines {
+  private static final int  MAGIC = 0x484F5554;       // "HOUT"
+  private static final int  VERSION = 1;
+  private static final String[] CAPS = {"butt", "round", "square"};   // Indexed by BasicStroke.CAP_*
+  private static final String[] JOINS = {"miter", "round", "bevel"};  // Indexed by BasicStroke.JOIN_*
+  private final HersheyFont font;
+  private final Pen         pen;
+  private final File        file;
+  private final Map<Integer,Outline> outlines = new ConcurrentHashMap<>();   // By glyph code
+  private volatile boolean  dirty;
+
+  /**
+   *  Pen used to widen strokes
+   */
+  static class Pen {
+    final float width;        // Font units
+    final int   cap, join;    // BasicStroke.CAP_* and JOIN_*
+
+    Pen (float width, int cap, int join) {
+      if (!(width > 0) || cap < 0 || cap >= CAPS.length || join < 0 || join >= JOINS.length) {
+        throw new IllegalArgumentException("Bad pen: " + width + ", " + cap + ", " + join);
+      }
+      this.width = width;
+      this.cap = cap;
+      this.join = join;
+    }
+
+    /**
+     *  Parse a pen such as "2", "2,round" or "1.5,square,miter" (cap and join default to round)
+     */
+    static Pen parse (String spec) {
+      String[] parts = spec.split(",");
+      int cap = parts.length > 1 ? Arrays.asList(CAPS).indexOf(parts[1].trim().toLowerCase()) : BasicStroke.CAP_ROUND;
+      int join = parts.length > 2 ? Arrays.asList(JOINS).indexOf(parts[2].trim().toLowerCase()) : BasicStroke.JOIN_ROUND;
+      return new Pen(Float.parseFloat(parts[0].trim()), cap, join);
+    }
+
+    BasicStroke getStroke () {
+      return new BasicStroke(width, cap, join);
+    }
+
+    @Override
+    public String toString () {
+      return (width == (int) width ? Integer.toString((int) width) : Float.toString(width)) + "," + CAPS[cap] + "," +
+             JOINS[join];
+    }
+  }
+
+  /**
+   *  A cached outline: segment types as returned by PathIterator and their coordinates
+   */
+  private static class Outline {
+    final long    checksum;
+    final byte[]  types;
+    final float[] coords;
+
+    Outline (long checksum, byte[] types, float[] coords) {
+      this.checksum = checksum;
+      this.types = types;
+      this.coords = coords;
+    }
+
+    Path2D.Float toPath () {
+      Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, Math.max(types.length, 1));
+      int cc = 0;
+      for (byte type : types) {
+        switch (type) {
+          case PathIterator.SEG_MOVETO:
+            path.moveTo(coords[cc++], coords[cc++]);
+            break;
+          case PathIterator.SEG_LINETO:
+            path.lineTo(coords[cc++], coords[cc++]);
+            break;
+          case PathIterator.SEG_QUADTO:
+            path.quadTo(coords[cc++], coords[cc++], coords[cc++], coords[cc++]);
+            break;
+          case PathIterator.SEG_CUBICTO:
+            path.curveTo(coords[cc++], coords[cc++], coords[cc++], coords[cc++], coords[cc++], coords[cc++]);
+            break;
+          default:
+            path.closePath();
+            break;
+        }
+      }
+      return path;
+    }
+  }
+
+  /**
+   *  Outlines for a pen, loading any that were cached earlier
+   */
+  GlyphOutlines (HersheyFont font, Pen pen) {
+    this.font = font;
+    this.pen = pen;
+    File dir = new File(System.getProperty("hershey.outlines", new File(System.getProperty("user.home"), "hershey.outlines").getPath()));
+    file = new File(dir, pen.toString().replace(',', '_') + ".outlines");
+    load();
+  }
+
+  Pen getPen () {
+    return pen;
+  }
+
+  /**
+   *  Get a glyph's outline, computing it if it isn't cached
+   *  @param idx glyph index
+   *  @return new path, empty for a glyph with no strokes
+   */
+  Path2D.Float getOutline (int idx) {
+    long checksum = getChecksum(idx);
+    Outline outline = outlines.get(font.getCode(idx));
+    if (outline == null || outline.checksum != checksum) {
+      outline = computeOutline(idx, checksum);
+      outlines.put(font.getCode(idx), outline);
+      dirty = true;
+    }
+    return outline.toPath();
+  }
+
+  /**
+   *  Compute the outlines of glyphs that aren't cached, in parallel
+   *  @param glyphs glyph indexes
+   *  @return number of outlines computed
+   */
+  int computeAll (int[] glyphs) {
+    int[] missing = Arrays.stream(glyphs).distinct().filter(idx -> {
+      Outline outline = outlines.get(font.getCode(idx));
+      return outline == null || outline.checksum != getChecksum(idx);
+    }).toArray();
+    if (missing.length > 0) {
+      new OutlineTask(missing, 0, missing.length).invoke();
+      dirty = true;
+    }
+    return missing.length;
+  }
+
+  private class OutlineTask extends RecursiveAction {
+    private final int[] glyphs;
+    private final int   from, to;
+
+    OutlineTask (int[] glyphs, int from, int to) {
+      this.glyphs = glyphs;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute () {
+      if (to - from > 4) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new OutlineTask(glyphs, from, mid), new OutlineTask(glyphs, mid, to));
+        return;
+      }
+      for (int ii = from; ii < to; ii++) {
+        int idx = glyphs[ii];
+        outlines.put(font.getCode(idx), computeOutline(idx, getChecksum(idx)));
+      }
+    }
+  }
+
+  /**
+   *  Stroke and union a glyph, dropping the zero length and collinear line segments Area leaves where
+   *  pieces were joined
+   */
+  private Outline computeOutline (int idx, long checksum) {
+    Area area = new Area(pen.getStroke().createStrokedShape(font.getPath(idx)));
+    byte[] types = new byte[32];
+    float[] coords = new float[64];
+    int segs = 0, len = 0;
+    float[] seg = new float[6];
+    float startX = 0, startY = 0, curX = 0, curY = 0;
+    boolean merge = false;          // Last segment written was a line that the next line may extend
+    for (PathIterator it = area.getPathIterator(null); !it.isDone(); it.next()) {
+      int type = it.currentSegment(seg);
+      int count = type == PathIterator.SEG_CLOSE ? 0 : type == PathIterator.SEG_QUADTO ? 4 : type == PathIterator.SEG_CUBICTO ? 6 : 2;
+      if (type == PathIterator.SEG_LINETO) {
+        if (Math.abs(seg[0] - curX) < 1e-4f && Math.abs(seg[1] - curY) < 1e-4f) {
+          continue;
+        }
+        if (merge) {
+          // Previous line runs from (px, py) to (curX, curY); extend it if this one carries on in the same direction
+          float px = coords[len - 4], py = coords[len - 3];
+          float dx1 = curX - px, dy1 = curY - py, dx2 = seg[0] - curX, dy2 = seg[1] - curY;
+          if (Math.abs(dx1 * dy2 - dy1 * dx2) < 1e-4f * (Math.abs(dx1) + Math.abs(dy1)) && dx1 * dx2 + dy1 * dy2 > 0) {
+            coords[len - 2] = curX = seg[0];
+            coords[len - 1] = curY = seg[1];
+            continue;
+          }
+        }
+      } else if (type == PathIterator.SEG_CLOSE) {
+        // A line back to the start is implied by the close
+        if (merge && Math.abs(coords[len - 2] - startX) < 1e-4f && Math.abs(coords[len - 1] - startY) < 1e-4f) {
+          len -= 2;
+          segs--;
+        }
+      }
+      if (segs == types.length) {
+        types = Arrays.copyOf(types, segs * 2);
+      }
+      types[segs++] = (byte) type;
+      if (len + count > coords.length) {
+        coords = Arrays.copyOf(coords, coords.length * 2);
+      }
+      System.arraycopy(seg, 0, coords, len, count);
+      len += count;
+      if (type == PathIterator.SEG_MOVETO) {
+        startX = seg[0];
+        startY = seg[1];
+      }
+      if (count > 0) {
+        curX = seg[count - 2];
+        curY = seg[count - 1];
+      }
+      merge = type == PathIterator.SEG_LINETO;
+    }
+    return new Outline(checksum, Arrays.copyOf(types, segs), Arrays.copyOf(coords, len));
+  }
+
+  /**
+   *  CRC of everything a glyph's outline depends on
+   */
+  private long getChecksum (int idx) {
+    CRC32 crc = new CRC32();
+    crc.update(font.getLeft(idx));
+    crc.update(font.getRight(idx));
+    crc.update(font.getVertices(idx), font.getOffset(idx) * 2, font.getLength(idx) * 2);
+    return crc.getValue();
+  }
+
+  private void load () {
+    if (!file.exists()) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readFloat() != pen.width || in.readByte() != pen.cap ||
+          in.readByte() != pen.join) {
+        return;
+      }
+      for (int ii = in.readInt(); ii > 0; ii--) {
+        int code = in.readInt();
+        long checksum = in.readInt() & 0xFFFFFFFFL;
+        byte[] types = new byte[in.readInt()];
+        in.readFully(types);
+        float[] coords = new float[in.readInt()];
+        for (int jj = 0; jj < coords.length; jj++) {
+          coords[jj] = in.readFloat();
+        }
+        outlines.put(code, new Outline(checksum, types, coords));
+      }
+    } catch (IOException ex) {
+      ex.printStackTrace();
+      outlines.clear();
+    }
+  }
+
+  /**
+   *  Write the cache file if any outlines were computed since it was loaded
+   */
+  synchronized void save () {
+    if (!dirty) {
+      return;
+    }
+    // Cleared before taking the snapshot, so outlines added while it's written mark the cache dirty again
+    dirty = false;
+    File tmp = null;
+    boolean saved = false;
+    try {
+      File dir = file.getAbsoluteFile().getParentFile();
+      dir.mkdirs();
+      // Write to a temporary file and move it into place, so readers never see a partial file
+      tmp = File.createTempFile("hershey", ".outlines", dir);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeFloat(pen.width);
+        out.writeByte(pen.cap);
+        out.writeByte(pen.join);
+        Map<Integer,Outline> sorted = new TreeMap<>(outlines);
+        out.writeInt(sorted.size());
+        for (Map.Entry<Integer,Outline> entry : sorted.entrySet()) {
+          Outline outline = entry.getValue();
+          out.writeInt(entry.getKey());
+          out.writeInt((int) outline.checksum);
+          out.writeInt(outline.types.length);
+          out.write(outline.types);
+          out.writeInt(outline.coords.length);
+          for (float coord : outline.coords) {
+            out.writeFloat(coord);
+          }
+        }
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      saved = true;
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    } finally {
+      if (!saved) {
+        dirty = true;
+        if (tmp != null) {
+          tmp.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   *  Build SVG path data for an outline, moving the origin to (dx, baseline) and flipping y if up is true
+   */
+  static String toSvgPath (Path2D path, double dx, double baseline, boolean up) {
+    StringBuilder buf = new StringBuilder();
+    float[] seg = new float[6];
+    for (PathIterator it = path.getPathIterator(null); !it.isDone(); it.next()) {
+      int type = it.currentSegment(seg);
+      if (buf.length() > 0) {
+        buf.append(' ');
+      }
+      int count;
+      switch (type) {
+        case PathIterator.SEG_MOVETO:
+          buf.append('M');
+          count = 2;
+          break;
+        case PathIterator.SEG_LINETO:
+          buf.append('L');
+          count = 2;
+          break;
+        case PathIterator.SEG_QUADTO:
+          buf.append('Q');
+          count = 4;
+          break;
+        case PathIterator.SEG_CUBICTO:
+          buf.append('C');
+          count = 6;
+          break;
+        default:
+          buf.append('Z');
+          count = 0;
+          break;
+      }
+      for (int ii = 0; ii < count; ii += 2) {
+        buf.append(ii > 0 ? " " : "").append(format(seg[ii] + dx)).append(' ');
+        buf.append(format(up ? baseline - seg[ii + 1] : seg[ii + 1] - baseline));
+      }
+    }
+    return buf.toString();
+  }
+
+  /**
+   *  Format a coordinate with at most 2 decimals
+   */
+  private static String format (double val) {
+    long hundredths = Math.round(val * 100);
+    if (hundredths % 100 == 0) {
+      return Long.toString(hundredths / 100);
+    }
+    return new BigDecimal(hundredths).movePointLeft(2).stripTrailingZeros().toPlainString();
+  }
+
+  /**
+   *  Compute the outlines of the glyphs in a family's table that aren't cached yet
+   */
+  private void prepare (int[] codes) {
+    int[] glyphs = new int[codes.length];
+    for (int ii = 0; ii < codes.length; ii++) {
+      glyphs[ii] = font.indexOf(codes[ii]);
+    }
+    computeAll(glyphs);
+  }
+
+  /**
+   *  SVG font whose glyphs are the filled outlines, with the same metrics and kerning as the single
+   *  stroke SVG font, for importing into outline font editors.  Each family's outlines are computed as
+   *  it's exported and the cache is saved after each family.
+   */
+  FontExporter.Format getFontFormat () {
+    return new FontExporter.Format() {
+      public String getName () {
+        return "Outline SVG Font " + pen;
+      }
+
+      public String getExtension () {
+        return "outline.svg";
+      }
+
+      public void write (HersheyFont font, String family, int[] codes, OutputStream os) throws IOException {
+        prepare(codes);
+        GlyphMetrics metrics = GlyphMetrics.get(font);
+        GlyphMetrics.Family fam = metrics.getFamily(family);
+        // The pen extends the ink by half its width in every direction
+        int ascent = (int) Math.ceil(fam.ascent + pen.width / 2), descent = (int) Math.ceil(fam.descent + pen.width / 2);
+        int space = font.getRight(font.indexOf(codes[0])) - font.getLeft(font.indexOf(codes[0]));
+        Writer out = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        out.write("<?xml version=\"1.0\" standalone=\"no\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\">\n<defs>\n");
+        out.write("<font id=\"" + FontExporter.getIdentifier(family) + "_outline\" horiz-adv-x=\"" + space + "\">\n");
+        out.write("<font-face font-family=\"" + family + " Outline\" units-per-em=\"32\" ascent=\"" + ascent +
+                  "\" descent=\"" + -descent + "\" cap-height=\"" + fam.capHeight + "\" x-height=\"" + fam.xHeight + "\"/>\n");
+        out.write("<missing-glyph horiz-adv-x=\"" + space + "\"/>\n");
+        for (int ii = 0; ii < 96; ii++) {
+          int gdx = font.indexOf(codes[ii]);
+          int left = font.getLeft(gdx);
+          String path = toSvgPath(getOutline(gdx), -left, fam.baseline, true);
+          out.write("<glyph unicode=\"" + FontExporter.escape((char) (ii + 32)) + "\" horiz-adv-x=\"" +
+                    (font.getRight(gdx) - left) + "\"");
+          out.write(path.length() > 0 ? " d=\"" + path + "\"/>\n" : "/>\n");
+        }
+        byte[] kern = metrics.getKerning(family);
+        for (int ii = 0; ii < kern.length; ii++) {
+          if (kern[ii] != 0) {
+            out.write("<hkern u1=\"" + FontExporter.escape((char) (ii / 96 + 32)) + "\" u2=\"" +
+                      FontExporter.escape((char) (ii % 96 + 32)) + "\" k=\"" + -kern[ii] + "\"/>\n");
+          }
+        }
+        out.write("</font>\n</defs>\n</svg>\n");
+        out.flush();
+        save();
+      }
+    };
+  }
+
+  /**
+   *  SVG drawing with each character's filled outline as a path, 16 to a row in cells one em high, for
+   *  laser and vinyl cutters.  Units are font units with y down and each path has the id
+   *  "<family>_<hex code>".
+   */
+  FontExporter.Format getPathsFormat () {
+    return new FontExporter.Format() {
+      public String getName () {
+        return "Outline SVG Paths " + pen;
+      }
+
+      public String getExtension () {
+        return "paths.svg";
+      }
+
+      public void write (HersheyFont font, String family, int[] codes, OutputStream os) throws IOException {
+        prepare(codes);
+        GlyphMetrics.Family fam = GlyphMetrics.get(font).getFamily(family);
+        int cellWidth = 0;
+        for (int code : codes) {
+          int gdx = font.indexOf(code);
+          cellWidth = Math.max(cellWidth, font.getRight(gdx) - font.getLeft(gdx));
+        }
+        cellWidth += (int) Math.ceil(pen.width);
+        int top = (int) Math.ceil(fam.ascent + pen.width / 2);
+        int cellHeight = top + (int) Math.ceil(fam.descent + pen.width / 2);
+        String id = FontExporter.getIdentifier(family);
+        Writer out = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        out.write("<?xml version=\"1.0\" standalone=\"no\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" viewBox=\"0 0 " + cellWidth * 16 + " " +
+                  cellHeight * 6 + "\">\n");
+        out.write("<title>" + family + ", pen " + pen + "</title>\n");
+        for (int ii = 0; ii < 96; ii++) {
+          int gdx = font.indexOf(codes[ii]);
+          String path = toSvgPath(getOutline(gdx), (ii % 16) * cellWidth + Math.ceil(pen.width / 2) - font.getLeft(gdx),
+                                  fam.baseline - top - (ii / 16) * cellHeight, false);
+          if (path.length() > 0) {
+            out.write(String.format("<path id=\"%s_%02x\" d=\"%s\"/>\n", id, ii + 32, path));
+          }
+        }
+        out.write("</svg>\n");
+        out.flush();
+        save();
+      }
+    };
+  }
+}
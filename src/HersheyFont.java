@@ -0,0 +1,828 @@
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ *  Compact store for the Hershey glyph set.  The vertices of all glyphs are packed into one shared
+ *  byte array of x,y pairs and each glyph is described by an offset, a vertex count and its left/right
+ *  metrics.  Hershey code lookups use primitive arrays indexed by code, so nothing is boxed, and
+ *  Path2D objects are only built when a caller asks for one.  When loaded from Hurt format text, a
+ *  glyph's vertices are decoded from the source file the first time the glyph is used.
+ */
+class HersheyFont {
+  static final byte             PEN_UP = Byte.MIN_VALUE;  // x,y value used to mark a "pen up" vertex
+  static final String           BINARY_NAME = "hershey.bin";
+  private static final int      MAGIC = 0x48464E54;       // "HFNT"
+  private static final int      VERSION = 1;
+  private int[]                 codes;                    // Hershey code of each glyph
+  private int[]                 offset;                   // Index of glyph's first x,y pair in coords
+  private short[]               length;                   // Number of x,y pairs (including pen up markers)
+  private byte[]                left, right;
+  private byte[]                coords;                   // x,y pairs for all glyphs
+  private int[]                 hIndex;                   // Hershey code to glyph index, or -1
+  private int[]                 ascii;                    // Hershey code to ASCII code, or -1
+  private short[]               family;                   // Hershey code to index into familyNames, or -1
+  private String[]              familyNames;
+  private Map<String,int[]>     families = new TreeMap<>();
+  private Map<String,int[]>     order;                    // Families in ascii.txt order
+  private GlyphMetrics          metrics;                  // Created by getMetrics()
+  private GlyphDetail           detail;                   // Created by getDetail()
+  // Lazily decoded glyphs (null when loaded from a compiled font)
+  private ByteBuffer[]          sources;                  // Contents of Hurt format files
+  private byte[]                source;                   // Index into sources for each glyph
+  private int[]                 position;                 // Offset of glyph's first vertex in its source
+  private AtomicIntegerArray    decoded;                  // Bit set of glyphs whose vertices are in coords
+
+  private HersheyFont (int[] codes, int[] offset, short[] length, byte[] left, byte[] right, byte[] coords,
+                       Map<String,int[]> order) {
+    this(codes, offset, length, left, right, coords, order, null, null, null);
+  }
+
+  private HersheyFont (int[] codes, int[] offset, short[] length, byte[] left, byte[] right, byte[] coords,
+                       Map<String,int[]> order, ByteBuffer[] sources, byte[] source, int[] position) {
+    this.sources = sources;
+    this.source = source;
+    this.position = position;
+    this.decoded = sources != null ? new AtomicIntegerArray((codes.length + 31) >> 5) : null;
+    this.codes = codes;
+    this.offset = offset;
+    this.length = length;
+    this.left = left;
+    this.right = right;
+    this.coords = coords;
+    this.order = order;
+    int maxCode = 0;
+    for (int code : codes) {
+      maxCode = Math.max(maxCode, code);
+    }
+    hIndex = new int[maxCode + 1];
+    ascii = new int[maxCode + 1];
+    family = new short[maxCode + 1];
+    Arrays.fill(hIndex, -1);
+    Arrays.fill(ascii, -1);
+    Arrays.fill(family, (short) -1);
+    for (int hdx = 0; hdx < codes.length; hdx++) {
+      hIndex[codes[hdx]] = hdx;
+    }
+    families.putAll(order);
+    familyNames = families.keySet().toArray(new String[0]);
+    // Later lines in ascii.txt take precedence for codes shared by several families
+    for (Map.Entry<String,int[]> entry : order.entrySet()) {
+      short fdx = (short) Arrays.binarySearch(familyNames, entry.getKey());
+      int[] hCodes = entry.getValue();
+      for (int ii = 0; ii < hCodes.length; ii++) {
+        if (hCodes[ii] < ascii.length) {
+          ascii[hCodes[ii]] = 32 + ii;
+          family[hCodes[ii]] = fdx;
+        }
+      }
+    }
+  }
+
+  /**
+   *  Load the font set.  A precompiled binary font (see {@link #writeBinary(File)}) is used if the
+   *  "hershey.font" system property names one, or if "hershey.bin" is on the classpath.  Otherwise
+   *  the Hurt format files listed in the "hershey.sources" property (comma separated, default
+   *  "hershey.txt") are indexed with the families listed in "hershey.ascii" (default "ascii.txt").
+   */
+  static HersheyFont load () throws IOException {
+    long start = Diagnostics.start();
+    Object event = Diagnostics.begin(Diagnostics.Stage.FONT_LOAD);
+    String source = null;
+    HersheyFont font = null;
+    try {
+      String file = System.getProperty("hershey.font");
+      if (file != null) {
+        source = file;
+        font = readBinary(new File(file));
+      } else {
+        InputStream is = HersheyFont.class.getClassLoader().getResourceAsStream(BINARY_NAME);
+        if (is != null) {
+          try (InputStream in = is) {
+            source = BINARY_NAME;
+            font = readBinary(ByteBuffer.wrap(readFully(in)));
+          }
+        }
+      }
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+    if (font == null) {
+      source = System.getProperty("hershey.sources", "hershey.txt");
+      font = open(Arrays.asList(source.split(",")), System.getProperty("hershey.ascii", "ascii.txt"));
+    }
+    Diagnostics.end(Diagnostics.Stage.FONT_LOAD, start, event, font.glyphCount(), source);
+    return font;
+  }
+
+  /**
+   *  Index one or more files in James Hurt's ASCII format.  Each file is scanned once to record the
+   *  code, metrics and byte offset of every glyph record, but vertices are only decoded the first time
+   *  a glyph is used.  All files share one code space and, if a code appears more than once, the
+   *  last record wins.
+   *  @param fontFiles Hurt format files (filesystem paths or classpath resources)
+   *  @param lookupFile family to ASCII mappings in ascii.txt format (filesystem path or classpath resource)
+   */
+  static HersheyFont open (List<String> fontFiles, String lookupFile) throws IOException {
+    ByteBuffer[] sources = new ByteBuffer[fontFiles.size()];
+    for (int sdx = 0; sdx < sources.length; sdx++) {
+      sources[sdx] = readSource(fontFiles.get(sdx).trim());
+    }
+    return open(sources, StandardCharsets.ISO_8859_1.decode(readSource(lookupFile)).toString());
+  }
+
+  /**
+   *  Index Hurt format files like open(), but read them into memory rather than mapping them, for files
+   *  that may be edited while the font is in use
+   */
+  static HersheyFont read (List<File> fontFiles, File lookupFile) throws IOException {
+    ByteBuffer[] sources = new ByteBuffer[fontFiles.size()];
+    for (int sdx = 0; sdx < sources.length; sdx++) {
+      sources[sdx] = ByteBuffer.wrap(Files.readAllBytes(fontFiles.get(sdx).toPath()));
+    }
+    return open(sources, new String(Files.readAllBytes(lookupFile.toPath()), StandardCharsets.ISO_8859_1));
+  }
+
+  private static HersheyFont open (ByteBuffer[] sources, String lookup) {
+    int count = 0, maxCode = 0;
+    int[] codes = new int[2048];
+    int[] verts = new int[2048];
+    byte[] source = new byte[2048];
+    int[] position = new int[2048];
+    byte[] left = new byte[2048];
+    byte[] right = new byte[2048];
+    for (int sdx = 0; sdx < sources.length; sdx++) {
+      ByteBuffer buf = sources[sdx];
+      int limit = buf.limit();
+      int pos = 0;
+      while (pos < limit) {
+        int eol = pos;
+        while (eol < limit && buf.get(eol) != '\n' && buf.get(eol) != '\r') {
+          eol++;
+        }
+        // Lines that don't start with a code and vertex count continue a record split at 72 characters
+        if (eol - pos >= 10 && isDigitOrSpace(buf, pos, pos + 8)) {
+          if (count == codes.length) {
+            int size = count * 2;
+            codes = Arrays.copyOf(codes, size);
+            verts = Arrays.copyOf(verts, size);
+            source = Arrays.copyOf(source, size);
+            position = Arrays.copyOf(position, size);
+            left = Arrays.copyOf(left, size);
+            right = Arrays.copyOf(right, size);
+          }
+          codes[count] = parseInt(buf, pos, pos + 5);
+          verts[count] = parseInt(buf, pos + 5, pos + 8) - 1;
+          left[count] = (byte) (buf.get(pos + 8) - 'R');
+          right[count] = (byte) (buf.get(pos + 9) - 'R');
+          source[count] = (byte) sdx;
+          position[count] = pos + 10;
+          maxCode = Math.max(maxCode, codes[count]);
+          count++;
+        }
+        pos = eol + 1;
+      }
+    }
+    // Keep the first position of each code, but take its data from the last record with that code
+    int[] last = new int[maxCode + 1];
+    Arrays.fill(last, -1);
+    int unique = 0;
+    for (int ii = 0; ii < count; ii++) {
+      if (last[codes[ii]] < 0) {
+        unique++;
+      }
+      last[codes[ii]] = ii;
+    }
+    int[] gCodes = new int[unique];
+    int[] gOffset = new int[unique];
+    short[] gLength = new short[unique];
+    byte[] gLeft = new byte[unique];
+    byte[] gRight = new byte[unique];
+    byte[] gSource = new byte[unique];
+    int[] gPosition = new int[unique];
+    int hdx = 0, pairs = 0;
+    for (int ii = 0; ii < count; ii++) {
+      int rec = last[codes[ii]];
+      if (rec >= 0) {
+        last[codes[ii]] = -1;
+        gCodes[hdx] = codes[rec];
+        gOffset[hdx] = pairs;
+        gLength[hdx] = (short) verts[rec];
+        gLeft[hdx] = left[rec];
+        gRight[hdx] = right[rec];
+        gSource[hdx] = source[rec];
+        gPosition[hdx] = position[rec];
+        pairs += verts[rec];
+        hdx++;
+      }
+    }
+    return new HersheyFont(gCodes, gOffset, gLength, gLeft, gRight, new byte[pairs * 2], parseFamilies(lookup),
+                           sources, gSource, gPosition);
+  }
+
+  private static boolean isDigitOrSpace (ByteBuffer buf, int start, int end) {
+    for (int ii = start; ii < end; ii++) {
+      byte cc = buf.get(ii);
+      if (cc != ' ' && (cc < '0' || cc > '9')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int parseInt (ByteBuffer buf, int start, int end) {
+    int val = 0;
+    for (int ii = start; ii < end; ii++) {
+      byte cc = buf.get(ii);
+      if (cc != ' ') {
+        val = val * 10 + (cc - '0');
+      }
+    }
+    return val;
+  }
+
+  /**
+   *  Result of update(): the new font and what differs from the old one
+   */
+  static class Changes {
+    final HersheyFont   font;
+    final Set<Integer>  codes;        // Hershey codes whose glyphs were added, removed or changed
+    final Set<String>   families;     // Families added, removed, remapped or using a changed glyph
+    final int           reused;       // Glyphs whose decoded vertices were carried over
+
+    private Changes (HersheyFont font, Set<Integer> codes, Set<String> families, int reused) {
+      this.font = font;
+      this.codes = codes;
+      this.families = families;
+      this.reused = reused;
+    }
+
+    boolean isEmpty () {
+      return codes.isEmpty() && families.isEmpty();
+    }
+  }
+
+  /**
+   *  Re-read edited Hurt format files and build a new font, leaving this one untouched so it can stay
+   *  in use until the new one is swapped in.  The files are re-indexed (a fast line scan) and each
+   *  record is compared with this font's record for the same code.  Glyphs whose records are unchanged
+   *  keep their already decoded vertices (or stay lazily decoded), and only new and edited glyphs are
+   *  decoded.  Files are read with read(), so later edits can't change them under the new font.
+   *  @param fontFiles Hurt format files
+   *  @param lookupFile family to ASCII mappings in ascii.txt format
+   */
+  Changes update (List<File> fontFiles, File lookupFile) throws IOException {
+    HersheyFont next = read(fontFiles, lookupFile);
+    Set<Integer> changed = new TreeSet<>();
+    int reused = 0;
+    for (int ii = 0; ii < next.codes.length; ii++) {
+      int old = indexOf(next.codes[ii]);
+      try {
+        if (old >= 0 && isSameGlyph(old, next, ii)) {
+          if (isDecoded(old)) {
+            System.arraycopy(coords, offset[old] * 2, next.coords, next.offset[ii] * 2, length[old] * 2);
+            next.markDecoded(ii);
+            reused++;
+          }
+        } else {
+          // Decode changed glyphs now, so a record cut short by a half saved file fails here
+          next.ensureDecoded(ii);
+          changed.add(next.codes[ii]);
+        }
+      } catch (IndexOutOfBoundsException ex) {
+        throw new IOException("Incomplete record for code " + next.codes[ii], ex);
+      }
+    }
+    for (int code : codes) {
+      if (next.indexOf(code) < 0) {
+        changed.add(code);
+      }
+    }
+    Set<String> families = new TreeSet<>();
+    for (Map.Entry<String,int[]> entry : next.families.entrySet()) {
+      if (!Arrays.equals(entry.getValue(), this.families.get(entry.getKey()))) {
+        families.add(entry.getKey());
+      } else {
+        for (int code : entry.getValue()) {
+          if (changed.contains(code)) {
+            families.add(entry.getKey());
+            break;
+          }
+        }
+      }
+    }
+    for (String name : this.families.keySet()) {
+      if (!next.families.containsKey(name)) {
+        families.add(name);
+      }
+    }
+    return new Changes(next, changed, families, reused);
+  }
+
+  /**
+   *  Compare a glyph with a glyph of another font: metrics first, then the raw Hurt format records
+   *  (ignoring line breaks) if both have them, so unchanged glyphs aren't decoded
+   */
+  private boolean isSameGlyph (int idx, HersheyFont other, int odx) {
+    if (left[idx] != other.left[odx] || right[idx] != other.right[odx] || length[idx] != other.length[odx]) {
+      return false;
+    }
+    if (sources == null) {
+      other.ensureDecoded(odx);
+      for (int ii = 0; ii < length[idx] * 2; ii++) {
+        if (coords[offset[idx] * 2 + ii] != other.coords[other.offset[odx] * 2 + ii]) {
+          return false;
+        }
+      }
+      return true;
+    }
+    ByteBuffer buf = sources[source[idx]], oBuf = other.sources[other.source[odx]];
+    int pos = position[idx], oPos = other.position[odx];
+    for (int ii = 0; ii < length[idx] * 2; ii++) {
+      while (buf.get(pos) == '\n' || buf.get(pos) == '\r') {
+        pos++;
+      }
+      while (oBuf.get(oPos) == '\n' || oBuf.get(oPos) == '\r') {
+        oPos++;
+      }
+      if (buf.get(pos++) != oBuf.get(oPos++)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   *  Read a file from the filesystem (memory mapped) or, if no such file exists, from the classpath
+   */
+  private static ByteBuffer readSource (String name) throws IOException {
+    File file = new File(name);
+    if (file.isFile()) {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    }
+    InputStream is = HersheyFont.class.getClassLoader().getResourceAsStream(name);
+    if (is == null) {
+      throw new FileNotFoundException("Unable to find " + name);
+    }
+    try (InputStream in = is) {
+      return ByteBuffer.wrap(readFully(in));
+    }
+  }
+
+  /**
+   *  Decode a glyph's vertices from its Hurt format record into coords, skipping the line breaks of
+   *  records that were split at 72 characters.  Concurrent decodes of the same glyph write identical
+   *  values, so no lock is needed; the glyph's bit is set only after its vertices are stored.
+   */
+  private void decode (int idx) {
+    ByteBuffer buf = sources[source[idx]];
+    int pos = position[idx];
+    int cdx = offset[idx] * 2;
+    int end = cdx + length[idx] * 2;
+    while (cdx < end) {
+      byte cx = buf.get(pos++);
+      if (cx == '\n' || cx == '\r') {
+        continue;
+      }
+      byte cy = buf.get(pos++);
+      if (cx == ' ' && cy == 'R') {
+        coords[cdx++] = PEN_UP;
+        coords[cdx++] = PEN_UP;
+      } else {
+        coords[cdx++] = (byte) (cx - 'R');
+        coords[cdx++] = (byte) (cy - 'R');
+      }
+    }
+    markDecoded(idx);
+  }
+
+  private void markDecoded (int idx) {
+    int word = idx >> 5;
+    int old;
+    do {
+      old = decoded.get(word);
+    } while (!decoded.compareAndSet(word, old, old | (1 << idx)));
+  }
+
+  private boolean isDecoded (int idx) {
+    return decoded == null || (decoded.get(idx >> 5) & (1 << idx)) != 0;
+  }
+
+  private void ensureDecoded (int idx) {
+    if (!isDecoded(idx)) {
+      decode(idx);
+    }
+  }
+
+  private void decodeAll () {
+    for (int ii = 0; ii < codes.length; ii++) {
+      ensureDecoded(ii);
+    }
+  }
+
+  /**
+   *  Build Hershey code to ASCII code lookup tables from ascii.txt file
+   *  @return map of family name to Hershey codes in file order
+   */
+  private static Map<String,int[]> parseFamilies (String lookup) {
+    StringTokenizer tok = new StringTokenizer(lookup, "\n\r");
+    Map<String,int[]> order = new LinkedHashMap<>();
+    while (tok.hasMoreElements()) {
+      String line = tok.nextToken();
+      String[] parts = line.split(":");
+      if (parts.length == 2) {
+        int[] hCodes = new int[96];
+        int code = 0;
+        String[] seqs = parts[1].split(",");
+        for (String tmp : seqs) {
+          String[] seq = tmp.split("-");
+          if (seq.length != 1 && seq.length != 2) {
+            continue;
+          }
+          int start = Integer.parseInt(seq[0]);
+          int end = seq.length == 2 ? Integer.parseInt(seq[1]) : start;
+          // Lines usually map 96 codes, but custom tables may map more
+          if (end >= start && code + end - start + 1 > hCodes.length) {
+            hCodes = Arrays.copyOf(hCodes, Math.max(hCodes.length * 2, code + end - start + 1));
+          }
+          for (int ii = start; ii <= end; ii++) {
+            hCodes[code++] = ii;
+          }
+        }
+        order.put(parts[0], Arrays.copyOf(hCodes, code));
+      }
+    }
+    return order;
+  }
+
+  /**
+   *  Build/export step: decode the Hurt format sources named by the "hershey.sources" and "hershey.ascii"
+   *  properties (default hershey.txt and ascii.txt) and write them as a compiled binary font
+   */
+  static void compile (File file) throws IOException {
+    open(Arrays.asList(System.getProperty("hershey.sources", "hershey.txt").split(",")),
+         System.getProperty("hershey.ascii", "ascii.txt")).writeBinary(file);
+  }
+
+  /**
+   *  Write the packed tables as a compiled binary font.  Layout (big endian):
+   *  <pre>
+   *    int magic, int version, int glyphCount, int coordBytes
+   *    int[glyphCount] codes, int[glyphCount] offsets, short[glyphCount] lengths
+   *    byte[glyphCount] left, byte[glyphCount] right, byte[coordBytes] coords
+   *    int familyCount, then per family: UTF name, short count, int[count] codes
+   *  </pre>
+   *  Families are written in ascii.txt order so shared codes resolve the same way when reloaded.
+   */
+  void writeBinary (File file) throws IOException {
+    decodeAll();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(codes.length);
+      out.writeInt(coords.length);
+      for (int code : codes) {
+        out.writeInt(code);
+      }
+      for (int off : offset) {
+        out.writeInt(off);
+      }
+      for (short len : length) {
+        out.writeShort(len);
+      }
+      out.write(left);
+      out.write(right);
+      out.write(coords);
+      out.writeInt(order.size());
+      for (Map.Entry<String,int[]> entry : order.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeShort(entry.getValue().length);
+        for (int code : entry.getValue()) {
+          out.writeInt(code);
+        }
+      }
+    }
+  }
+
+  /**
+   *  Memory map a compiled binary font file and load its tables
+   */
+  static HersheyFont readBinary (File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return readBinary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  static HersheyFont readBinary (ByteBuffer buf) throws IOException {
+    try {
+      if (buf.getInt() != MAGIC) {
+        throw new IOException("Not a compiled Hershey font");
+      }
+      int version = buf.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported compiled font version: " + version);
+      }
+      int count = buf.getInt();
+      int[] codes = new int[count];
+      int[] offset = new int[count];
+      short[] length = new short[count];
+      byte[] left = new byte[count];
+      byte[] right = new byte[count];
+      byte[] coords = new byte[buf.getInt()];
+      buf.asIntBuffer().get(codes);
+      buf.position(buf.position() + count * 4);
+      buf.asIntBuffer().get(offset);
+      buf.position(buf.position() + count * 4);
+      buf.asShortBuffer().get(length);
+      buf.position(buf.position() + count * 2);
+      buf.get(left);
+      buf.get(right);
+      buf.get(coords);
+      Map<String,int[]> order = new LinkedHashMap<>();
+      int families = buf.getInt();
+      for (int ii = 0; ii < families; ii++) {
+        byte[] name = new byte[buf.getShort() & 0xFFFF];
+        buf.get(name);
+        int[] hCodes = new int[buf.getShort()];
+        buf.asIntBuffer().get(hCodes);
+        buf.position(buf.position() + hCodes.length * 4);
+        order.put(new String(name, StandardCharsets.UTF_8), hCodes);
+      }
+      return new HersheyFont(codes, offset, length, left, right, coords, order);
+    } catch (BufferUnderflowException ex) {
+      throw new IOException("Truncated compiled font", ex);
+    }
+  }
+
+  private static byte[] readFully (InputStream in) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    byte[] tmp = new byte[8192];
+    int len;
+    while ((len = in.read(tmp)) > 0) {
+      buf.write(tmp, 0, len);
+    }
+    return buf.toByteArray();
+  }
+
+  int glyphCount () {
+    return codes.length;
+  }
+
+  /**
+   *  Get the metrics shared by all users of this font.  They're kept here rather than in a map keyed
+   *  by font, so they're freed along with the font.
+   */
+  synchronized GlyphMetrics getMetrics () {
+    if (metrics == null) {
+      metrics = new GlyphMetrics(this);
+    }
+    return metrics;
+  }
+
+  /**
+   *  Get the level of detail cache shared by all users of this font (limited to 4 MB), also kept here
+   *  so it's freed along with the font
+   */
+  synchronized GlyphDetail getDetail () {
+    if (detail == null) {
+      detail = new GlyphDetail(this, 4 << 20);
+    }
+    return detail;
+  }
+
+  /**
+   *  Get glyph index for a Hershey code
+   *  @param code Hershey code
+   *  @return index of glyph, or -1 if no glyph uses this code
+   */
+  int indexOf (int code) {
+    return code >= 0 && code < hIndex.length ? hIndex[code] : -1;
+  }
+
+  int getCode (int idx) {
+    return codes[idx];
+  }
+
+  int getLeft (int idx) {
+    return left[idx];
+  }
+
+  int getRight (int idx) {
+    return right[idx];
+  }
+
+  /**
+   *  Get ASCII code a Hershey code is mapped to in ascii.txt
+   *  @param code Hershey code
+   *  @return ASCII code, or -1 if not mapped
+   */
+  int getAscii (int code) {
+    return code >= 0 && code < ascii.length ? ascii[code] : -1;
+  }
+
+  /**
+   *  Get name of font family a Hershey code is mapped to in ascii.txt
+   *  @param code Hershey code
+   *  @return family name, or null if not mapped
+   */
+  String getFamily (int code) {
+    int fdx = code >= 0 && code < family.length ? family[code] : -1;
+    return fdx >= 0 ? familyNames[fdx] : null;
+  }
+
+  /**
+   *  Map of family names (sorted) to the 96 Hershey codes for ASCII 0x20 - 0x7F
+   */
+  Map<String,int[]> getFamilies () {
+    return families;
+  }
+
+  /**
+   *  Get the glyph index for each ASCII code 0x20 - 0x7F in a family, so text can be mapped to
+   *  glyphs with an array lookup
+   *  @param name family name
+   *  @return array of 96 glyph indexes, or -1 where the family's code has no glyph
+   */
+  int[] getGlyphTable (String name) {
+    int[] hCodes = families.get(name);
+    if (hCodes == null) {
+      throw new IllegalArgumentException("Unknown font family: " + name);
+    }
+    int[] table = new int[96];
+    for (int ii = 0; ii < table.length; ii++) {
+      table[ii] = ii < hCodes.length ? indexOf(hCodes[ii]) : -1;
+    }
+    return table;
+  }
+
+  /**
+   *  Get the packed vertex array, decoding the glyph first if needed.  The glyph's x,y pairs start at
+   *  index getOffset(idx) * 2 and there are getLength(idx) of them, with PEN_UP pairs between strokes.
+   */
+  byte[] getVertices (int idx) {
+    ensureDecoded(idx);
+    return coords;
+  }
+
+  int getOffset (int idx) {
+    return offset[idx];
+  }
+
+  int getLength (int idx) {
+    return length[idx];
+  }
+
+  /**
+   *  Receives a glyph's strokes as a series of move and line commands
+   */
+  interface GlyphSink {
+    void moveTo (int x, int y);
+
+    void lineTo (int x, int y);
+  }
+
+  /**
+   *  GlyphSink that turns line commands into x1, y1, x2, y2 segments
+   */
+  abstract static class SegmentSink implements GlyphSink {
+    private int lastX, lastY;
+
+    public void moveTo (int x, int y) {
+      lastX = x;
+      lastY = y;
+    }
+
+    public void lineTo (int x, int y) {
+      segment(lastX, lastY, x, y);
+      lastX = x;
+      lastY = y;
+    }
+
+    abstract void segment (int x1, int y1, int x2, int y2);
+  }
+
+  /**
+   *  Stream a glyph's strokes to a sink.  This is the single decoder used by getPath(), getVectors()
+   *  and getSegments(), and allocates nothing.
+   *  @param idx glyph index
+   *  @param sink receives moveTo() at the start of each stroke, then lineTo() for each following vertex
+   */
+  void visit (int idx, GlyphSink sink) {
+    ensureDecoded(idx);
+    boolean move = true;
+    for (int ii = offset[idx] * 2, end = ii + length[idx] * 2; ii < end; ii += 2) {
+      byte xx = coords[ii];
+      if (xx == PEN_UP) {
+        move = true;
+      } else if (move) {
+        sink.moveTo(xx, coords[ii + 1]);
+        move = false;
+      } else {
+        sink.lineTo(xx, coords[ii + 1]);
+      }
+    }
+  }
+
+  /**
+   *  Count the line segments in a glyph, which is how many getSegments() will write
+   */
+  int getSegmentCount (int idx) {
+    ensureDecoded(idx);
+    int count = 0;
+    boolean move = true;
+    for (int ii = offset[idx] * 2, end = ii + length[idx] * 2; ii < end; ii += 2) {
+      if (coords[ii] == PEN_UP) {
+        move = true;
+      } else if (move) {
+        move = false;
+      } else {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   *  Write a glyph's line segments into a caller supplied buffer as x1, y1, x2, y2 groups
+   *  @param idx glyph index
+   *  @param buf buffer with room for getSegmentCount(idx) * 4 values from off
+   *  @param off index of the first value to write
+   *  @return number of segments written
+   */
+  int getSegments (int idx, int[] buf, int off) {
+    int[] pos = {off};
+    visit(idx, new SegmentSink() {
+      void segment (int x1, int y1, int x2, int y2) {
+        int ii = pos[0];
+        buf[ii] = x1;
+        buf[ii + 1] = y1;
+        buf[ii + 2] = x2;
+        buf[ii + 3] = y2;
+        pos[0] = ii + 4;
+      }
+    });
+    return (pos[0] - off) / 4;
+  }
+
+  /**
+   *  Float version of {@link #getSegments(int, int[], int)}
+   */
+  int getSegments (int idx, float[] buf, int off) {
+    int[] pos = {off};
+    visit(idx, new SegmentSink() {
+      void segment (int x1, int y1, int x2, int y2) {
+        int ii = pos[0];
+        buf[ii] = x1;
+        buf[ii + 1] = y1;
+        buf[ii + 2] = x2;
+        buf[ii + 3] = y2;
+        pos[0] = ii + 4;
+      }
+    });
+    return (pos[0] - off) / 4;
+  }
+
+  /**
+   *  Build a Path2D.Double for a glyph.  Paths are not retained, so callers that draw
+   *  the same glyph repeatedly should hold on to the result.
+   *  @param idx glyph index
+   *  @return new Path2D.Double object
+   */
+  Path2D.Double getPath (int idx) {
+    Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, Math.max(length[idx], 1));
+    visit(idx, new GlyphSink() {
+      public void moveTo (int x, int y) {
+        path.moveTo(x, y);
+      }
+
+      public void lineTo (int x, int y) {
+        path.lineTo(x, y);
+      }
+    });
+    return path;
+  }
+
+  Line2D.Double[] getVectors (int idx) {
+    long start = Diagnostics.start();
+    Object event = Diagnostics.begin(Diagnostics.Stage.VECTORS);
+    List<Line2D.Double> lines = new ArrayList<>();
+    visit(idx, new SegmentSink() {
+      void segment (int x1, int y1, int x2, int y2) {
+        lines.add(new Line2D.Double(x1, y1, x2, y2));
+      }
+    });
+    Line2D.Double[] vectors = lines.toArray(new Line2D.Double[0]);
+    Diagnostics.end(Diagnostics.Stage.VECTORS, start, event, vectors.length, null);
+    return vectors;
+  }
+}
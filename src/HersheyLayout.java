@@ -0,0 +1,268 @@
+/**
+ *  Headless text layout for one font family.  Strings are mapped to glyphs with a precomputed
+ *  ASCII to glyph index table, advanced using each glyph's left/right metrics, wrapped at spaces
+ *  (or mid word if a word doesn't fit) and aligned, then appended to a Polylines object as
+ *  positioned strokes.  An optional kerning table (see GlyphMetrics) adjusts the advance of each pair.
+ *  Coordinates use the Hershey convention of y increasing downward with the
+ *  first line's glyph origin at 0,0 and later lines lineHeight units below.  Settings aside, a
+ *  layout has no mutable state, so one instance can be shared by several threads.
+ */
+class HersheyLayout {
+  enum Align {LEFT, CENTER, RIGHT}
+
+  private final HersheyFont   font;
+  private final int[]         glyphs;             // ASCII 0x20 - 0x7F to glyph index
+  private final int[]         advance;
+  private double              scale = 1.0;
+  private double              wrapWidth;          // Width in output units, or 0 to only break at newlines
+  private double              lineHeight = 32;    // Distance between baselines in font units
+  private Align               align = Align.LEFT;
+  private byte[]              kerning;            // 96 x 96 pair adjustments in font units, or null
+
+  HersheyLayout (HersheyFont font, String family) {
+    this.font = font;
+    glyphs = font.getGlyphTable(family);
+    advance = new int[96];
+    int space = glyphs[0];
+    for (int ii = 0; ii < glyphs.length; ii++) {
+      if (glyphs[ii] < 0) {
+        glyphs[ii] = space;
+      }
+      if (glyphs[ii] >= 0) {
+        advance[ii] = font.getRight(glyphs[ii]) - font.getLeft(glyphs[ii]);
+      }
+    }
+  }
+
+  /**
+   *  Copy a layout's settings, sharing its glyph and advance tables, so a differently configured layout
+   *  of the same family is cheap to make
+   */
+  HersheyLayout (HersheyLayout layout) {
+    font = layout.font;
+    glyphs = layout.glyphs;
+    advance = layout.advance;
+    scale = layout.scale;
+    wrapWidth = layout.wrapWidth;
+    lineHeight = layout.lineHeight;
+    align = layout.align;
+    kerning = layout.kerning;
+  }
+
+  HersheyLayout setScale (double scale) {
+    this.scale = scale;
+    return this;
+  }
+
+  /**
+   *  Set maximum line width (in output units, so after scaling)
+   *  @param wrapWidth maximum width, or 0 to only break lines at '\n'
+   */
+  HersheyLayout setWrapWidth (double wrapWidth) {
+    this.wrapWidth = wrapWidth;
+    return this;
+  }
+
+  HersheyLayout setLineHeight (double lineHeight) {
+    this.lineHeight = lineHeight;
+    return this;
+  }
+
+  /**
+   *  Set horizontal alignment.  With a wrap width, lines are aligned within 0 to wrapWidth.  Without
+   *  one, lines start at (LEFT), are centered on (CENTER) or end at (RIGHT) x = 0.
+   */
+  HersheyLayout setAlign (Align align) {
+    this.align = align;
+    return this;
+  }
+
+  /**
+   *  Set pair kerning
+   *  @param kerning table from GlyphMetrics.getKerning(), or null for none
+   */
+  HersheyLayout setKerning (byte[] kerning) {
+    this.kerning = kerning;
+    return this;
+  }
+
+  double getScale () {
+    return scale;
+  }
+
+  double getLineHeight () {
+    return lineHeight;
+  }
+
+  /**
+   *  Map a character to its slot in the glyph table.  Characters outside 0x20 - 0x7F are laid out as spaces.
+   */
+  private static int slot (char cc) {
+    return cc >= 0x20 && cc < 0x80 ? cc - 0x20 : 0;
+  }
+
+  /**
+   *  Get the kerning adjustment between two glyph table slots, or 0 if prev is -1 (start of line)
+   */
+  private int kern (int prev, int sdx) {
+    return kerning != null && prev >= 0 ? kerning[prev * 96 + sdx] : 0;
+  }
+
+  /**
+   *  Measure the width of a string in output units, ignoring wrapping
+   */
+  double measure (CharSequence text) {
+    int width = 0, max = 0, prev = -1;
+    for (int ii = 0; ii < text.length(); ii++) {
+      char cc = text.charAt(ii);
+      if (cc == '\n') {
+        max = Math.max(max, width);
+        width = 0;
+        prev = -1;
+      } else if (cc != '\r') {
+        int sdx = slot(cc);
+        width += kern(prev, sdx) + advance[sdx];
+        prev = sdx;
+      }
+    }
+    return Math.max(max, width) * scale;
+  }
+
+  /**
+   *  Lay out text and append the resulting strokes to out (which is not cleared first)
+   *  @param text text to lay out
+   *  @param out destination for positioned polylines, one glyph group per character
+   *  @return number of lines laid out
+   */
+  int layout (CharSequence text, Polylines out) {
+    return layout(text, 0, 0, out);
+  }
+
+  /**
+   *  Lay out text starting with the first line's glyph origin at x, y (in output units)
+   */
+  int layout (CharSequence text, double x, double y, Polylines out) {
+    int len = text.length();
+    double wrap = wrapWidth / scale;
+    int[] width = new int[1];
+    int pos = 0, lines = 0;
+    while (true) {
+      int end = findLineEnd(text, pos, width);
+      double xOff;
+      switch (align) {
+        case CENTER:
+          xOff = wrap > 0 ? (wrap - width[0]) / 2 : -width[0] / 2.0;
+          break;
+        case RIGHT:
+          xOff = wrap > 0 ? wrap - width[0] : -width[0];
+          break;
+        default:
+          xOff = 0;
+          break;
+      }
+      emitLine(text, pos, end, x + xOff * scale, y + lines * lineHeight * scale, out);
+      lines++;
+      if (end >= len) {
+        break;
+      }
+      pos = nextLine(text, end);
+    }
+    return lines;
+  }
+
+  /**
+   *  Find the end of the line starting at pos: the next newline, the end of text, or where the line
+   *  wraps (at the last space that fits, or mid word if there is none).  Spaces never wrap a line.
+   *  @param width if not null, width[0] is set to the line's width in font units
+   *  @return index just past the line's last character
+   */
+  int findLineEnd (CharSequence text, int pos, int[] width) {
+    int len = text.length();
+    double wrap = wrapWidth / scale;
+    int end = pos, brk = -1, lineWidth = 0, brkWidth = 0, prev = -1;
+    while (end < len) {
+      char cc = text.charAt(end);
+      if (cc == '\n') {
+        break;
+      }
+      if (cc == '\r') {
+        end++;
+        continue;
+      }
+      int sdx = slot(cc);
+      int adv = kern(prev, sdx) + advance[sdx];
+      if (cc == ' ') {
+        brk = end;
+        brkWidth = lineWidth;
+      } else if (wrap > 0 && lineWidth + adv > wrap && end > pos) {
+        if (brk > pos) {
+          end = brk;
+          lineWidth = brkWidth;
+        }
+        break;
+      }
+      lineWidth += adv;
+      prev = sdx;
+      end++;
+    }
+    if (width != null) {
+      width[0] = lineWidth;
+    }
+    return end;
+  }
+
+  /**
+   *  Get the start of the line after one ending at end (from findLineEnd(), and before the end of
+   *  text), skipping the newline, or the spaces (and a newline following them) where it was wrapped
+   */
+  static int nextLine (CharSequence text, int end) {
+    if (text.charAt(end) == '\n') {
+      return end + 1;
+    }
+    int len = text.length(), pos = end;
+    while (pos < len && text.charAt(pos) == ' ') {
+      pos++;
+    }
+    if (pos < len && text.charAt(pos) == '\n') {
+      pos++;
+    }
+    return pos;
+  }
+
+  private void emitLine (CharSequence text, int start, int end, double x, double y, Polylines out) {
+    out.beginLine();
+    float ss = (float) scale;
+    double pen = x;
+    int prev = -1;
+    for (int ii = start; ii < end; ii++) {
+      char cc = text.charAt(ii);
+      if (cc == '\r') {
+        continue;
+      }
+      int sdx = slot(cc);
+      int gdx = glyphs[sdx];
+      pen += kern(prev, sdx) * scale;
+      prev = sdx;
+      out.beginGlyph();
+      if (gdx >= 0) {
+        float gx = (float) (pen - font.getLeft(gdx) * scale);
+        float gy = (float) y;
+        byte[] verts = font.getVertices(gdx);
+        boolean move = true;
+        for (int jj = font.getOffset(gdx) * 2, last = jj + font.getLength(gdx) * 2; jj < last; jj += 2) {
+          byte vx = verts[jj];
+          if (vx == HersheyFont.PEN_UP) {
+            move = true;
+          } else if (move) {
+            out.moveTo(gx + vx * ss, gy + verts[jj + 1] * ss);
+            move = false;
+          } else {
+            out.lineTo(gx + vx * ss, gy + verts[jj + 1] * ss);
+          }
+        }
+      }
+      pen += advance[sdx] * scale;
+    }
+    out.trim();
+  }
+}
@@ -11,175 +11,185 @@ import java.text.DecimalFormat;
 import java.util.*;
 import java.util.List;
 import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 
 import static javax.swing.JOptionPane.*;
 import static javax.swing.JOptionPane.OK_OPTION;
 
 class HersheyView extends JPanel {
-  private List<HersheyGlyph>    glyphs = new ArrayList<>();
-  private Map<Integer,Integer>  ascii = new HashMap<>();
-  private Map<Integer,String>   family = new HashMap<>();
-  private Map<String,List<Integer>>  families = new TreeMap<>();
-  private Map<Integer,Integer>  hIndex = new HashMap<>();
+  private static final RenderingHints QUALITY_HINTS = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+  private static final RenderingHints SCRUB_HINTS = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+  private static final BasicStroke    GRID_STROKE = new BasicStroke((0.25f));
+  private static final BasicStroke    ORIGIN_STROKE = new BasicStroke((0.5f));
+  private static final BasicStroke    LR_STROKE = new BasicStroke((1.0f));
+  private static final BasicStroke    GLYPH_STROKE = new BasicStroke((2.0f));
+  private HersheyFont           font;
+  private GlyphAtlas            atlas;
+  private GlyphIndex            glyphIndex;
+  private FontWatcher           fontWatcher;
+  private File                  watchDir;           // Directory being watched or loaded, or null
+  private int                   watchGeneration;    // Incremented by watchFonts(), so stale loads are dropped
+  private Runnable              fontListener;       // Called after the font is swapped
   private int                   index;
-  private boolean               showGrid, showLR, showOrigin;
+  private boolean               showGrid, showLR, showOrigin, scrubbing, smooth;
   private double                zoom = 8;
+  // Grid and origin layer, rebuilt when zoom, size, device scale or overlays change
+  private BufferedImage         background;
+  private double                bgZoom, bgScale;
+  private boolean               bgGrid, bgOrigin;
+  // Glyphs transformed to view coordinates, cleared when zoom, size, device scale or smoothing change
+  private Map<Integer,GlyphLayer> glyphCache = new LinkedHashMap<Integer,GlyphLayer>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry (Map.Entry<Integer,GlyphLayer> eldest) {
+      return size() > 64;
+    }
+  };
+  private double                cacheZoom, cacheScale;
+  private boolean               cacheSmooth;
+  private Dimension             cacheSize = new Dimension();
+
+  static {
+    QUALITY_HINTS.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    SCRUB_HINTS.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+  }
 
-  private HersheyView () {
+  private HersheyView () throws IOException {
+    this(HersheyFont.load());
+  }
+
+  HersheyView (HersheyFont font) {
     setPreferredSize(new Dimension(800, 800));
-    // Build glyphs from James Hurt's ASCII format
-    String font = getResource("hershey.txt");
-    StringTokenizer tok = new StringTokenizer(font, "\n\r");
-    List<String> lines = new ArrayList<>();
-    // Step 1: recombine lines that were split at 72 character boundary
-    while (tok.hasMoreElements()) {
-      String line = tok.nextToken();
-      boolean startOfGlyph = true;
-      for (int ii = 0; ii < Math.min(4, line.length()); ii++) {
-        char cc = line.charAt(ii);
-        startOfGlyph &= (Character.isDigit(cc) || cc == ' ');
-      }
-      if (startOfGlyph) {
-        lines.add(line);
-      } else {
-        int idx = lines.size() - 1;
-        String p1 = lines.get(idx) + line;
-        lines.remove(idx);
-        lines.add(p1);
-      }
-    }
-    // Step 2: Parse Hurt format and convert to Path2D.Double object
-    int hdx = 0;
-    for (String line : lines) {
-      Path2D.Double path = new Path2D.Double();
-      int code = Integer.parseInt(line.substring(0, 5).trim());
-      int verts = Integer.parseInt(line.substring(5, 8).trim());
-      int left = line.charAt(8) - 'R';
-      int right = line.charAt(9) - 'R';
-      boolean move = true;
-      for (int ii = 0; ii < verts - 1; ii++) {
-        int idx = ii * 2;
-        char cx = line.charAt(10 + idx);
-        char cy = line.charAt(11 + idx);
-        if (cx == ' ' && cy == 'R') {
-          move = true;
-        } else {
-          int xx = cx - 'R';
-          int yy = cy - 'R';
-          if (move) {
-            path.moveTo(xx, yy);
-            move = false;
-          } else {
-            path.lineTo(xx, yy);
+    this.font = font;
+    atlas = new GlyphAtlas(font, 32);
+  }
+
+  /**
+   *  Glyph outline and left/right lines in view coordinates
+   */
+  private static class GlyphLayer {
+    private Shape glyph, left, right;
+  }
+
+  private AffineTransform getViewTransform (Dimension dim) {
+    AffineTransform af = new AffineTransform();
+    af.translate(dim.width / 2.0, dim.height / 2.0);
+    af.scale(zoom, zoom);
+    return af;
+  }
+
+  /**
+   *  Get image of the background with the grid and origin drawn on it, rebuilding it if the
+   *  zoom, size, device scale or overlay settings have changed
+   *  @param scale device scale (for HiDPI displays), so the image can be drawn 1:1 with device pixels
+   */
+  private BufferedImage getBackgroundLayer (Dimension dim, double scale) {
+    int width = Math.max(1, (int) Math.ceil(dim.width * scale));
+    int height = Math.max(1, (int) Math.ceil(dim.height * scale));
+    if (background == null || background.getWidth() != width || background.getHeight() != height || bgZoom != zoom ||
+        bgScale != scale || bgGrid != showGrid || bgOrigin != showOrigin) {
+      background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      bgZoom = zoom;
+      bgScale = scale;
+      bgGrid = showGrid;
+      bgOrigin = showOrigin;
+      Graphics2D g2 = background.createGraphics();
+      g2.setRenderingHints(QUALITY_HINTS);
+      g2.setColor(getBackground());
+      g2.fillRect(0, 0, width, height);
+      g2.scale(scale, scale);
+      AffineTransform af = getViewTransform(dim);
+      if (showGrid) {
+        int jj = (int) (60 / (zoom / 8));
+        // Draw Grid
+        g2.setStroke(GRID_STROKE);
+        g2.setPaint(Color.blue);
+        for (int ii = 0; ii < jj; ii++) {
+          g2.draw(af.createTransformedShape(new Line2D.Double(ii, -jj, ii, +jj)));
+          g2.draw(af.createTransformedShape(new Line2D.Double(-jj, ii, +jj, ii)));
+          if (ii > 0) {
+            g2.draw(af.createTransformedShape(new Line2D.Double(-ii, -jj, -ii, +jj)));
+            g2.draw(af.createTransformedShape(new Line2D.Double(-jj, -ii, +jj, -ii)));
           }
         }
       }
-      hIndex.put(code, hdx++);
-      glyphs.add(new HersheyGlyph(code, path, left, right));
-    }
-    // Build Hershey code to ASCII code lookup tables from ascii.txt file
-    String lookup = getResource("ascii.txt");
-    tok = new StringTokenizer(lookup, "\n\r");
-    while (tok.hasMoreElements()) {
-      String line = tok.nextToken();
-      String[] parts = line.split(":");
-      int code = 32;
-      if (parts.length == 2) {
-        List<Integer> hCodes = new ArrayList<>();
-        String[] codes = parts[1].split(",");
-        for (String tmp : codes) {
-          String[] seq = tmp.split("-");
-          if (seq.length == 1) {
-            int val = Integer.parseInt(seq[0]);
-            ascii.put(val, code++);
-            hCodes.add(val);
-            family.put(val, parts[0]);
-          } else if (seq.length == 2) {
-            int start = Integer.parseInt(seq[0]);
-            int end = Integer.parseInt(seq[1]);
-            for (int ii = start; ii <= end; ii++) {
-              ascii.put(ii, code++);
-              family.put(ii, parts[0]);
-              hCodes.add(ii);
-            }
-          }
-        }
-        families.put(parts[0], hCodes);
+      if (showOrigin) {
+        // Draw cross at origin
+        g2.setStroke(ORIGIN_STROKE);
+        g2.setPaint(Color.red);
+        g2.draw(af.createTransformedShape(new Line2D.Double(0, -1, 0, +1)));
+        g2.draw(af.createTransformedShape(new Line2D.Double(-1, 0, +1, 0)));
       }
+      g2.dispose();
     }
+    return background;
   }
 
-  private String getResource (String fileName) {
-    InputStream is = getClass().getClassLoader().getResourceAsStream(fileName);
-    if (is != null) {
-      BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-      return reader.lines().collect(Collectors.joining(System.lineSeparator()));
+  /**
+   *  Get glyph transformed to view coordinates from the cache, or transform and cache it
+   *  @param scale device scale, which with the zoom selects the glyph's level of detail
+   */
+  private GlyphLayer getGlyphLayer (int idx, Dimension dim, double scale) {
+    if (cacheZoom != zoom || !cacheSize.equals(dim) || cacheScale != scale || cacheSmooth != smooth) {
+      glyphCache.clear();
+      cacheZoom = zoom;
+      cacheSize = dim;
+      cacheScale = scale;
+      cacheSmooth = smooth;
     }
-    return "";
+    GlyphLayer layer = glyphCache.get(idx);
+    if (layer == null) {
+      AffineTransform af = getViewTransform(dim);
+      Path2D.Double path = GlyphDetail.get(font).getPath(idx, zoom * scale, smooth);
+      Rectangle bnds = GlyphMetrics.get(font).getBounds(idx);
+      int left = font.getLeft(idx);
+      int right = font.getRight(idx);
+      layer = new GlyphLayer();
+      layer.glyph = af.createTransformedShape(path);
+      layer.left = af.createTransformedShape(new Line2D.Double(left, bnds.y, left, bnds.y + bnds.height));
+      layer.right = af.createTransformedShape(new Line2D.Double(right, bnds.y, right, bnds.y + bnds.height));
+      glyphCache.put(idx, layer);
+    }
+    return layer;
   }
 
   public void paint (Graphics g) {
+    long start = Diagnostics.start();
+    Object event = Diagnostics.begin(Diagnostics.Stage.PAINT);
     Graphics2D g2 = (Graphics2D) g;
-    RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    hints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-    g2.setRenderingHints(hints);
-    AffineTransform af = new AffineTransform();
     Dimension dim = getSize();
-    double xOff = dim.width / 2.0;
-    double yOff = dim.height / 2.0;
-    af.translate(xOff, yOff);
-    af.scale(zoom, zoom);
-    if (showGrid) {
-      int jj = (int) (60 / (zoom / 8));
-      // Draw Grid
-      g2.setStroke(new BasicStroke((0.25f)));
-      g2.setPaint(Color.blue);
-      for (int ii = 0; ii < jj; ii++) {
-        g2.draw(af.createTransformedShape(new Line2D.Double(ii, -jj, ii, +jj)));
-        g2.draw(af.createTransformedShape(new Line2D.Double(-jj, ii, +jj, ii)));
-        if (ii > 0) {
-          g2.draw(af.createTransformedShape(new Line2D.Double(-ii, -jj, -ii, +jj)));
-          g2.draw(af.createTransformedShape(new Line2D.Double(-jj, -ii, +jj, -ii)));
-        }
-      }
-    }
-    if (showOrigin) {
-      // Draw cross at origin
-      g2.setStroke(new BasicStroke((0.5f)));
-      g2.setPaint(Color.red);
-      g2.draw(af.createTransformedShape(new Line2D.Double(0, -1, 0, +1)));
-      g2.draw(af.createTransformedShape(new Line2D.Double(-1, 0, +1, 0)));
-    }
-    HersheyGlyph item = glyphs.get(index);
-    Rectangle bnds = item.path.getBounds();
+    double scale = g2.getTransform().getScaleX();
+    g2.drawImage(getBackgroundLayer(dim, scale), 0, 0, dim.width, dim.height, null);
+    // While the slider is being dragged, draw without antialiasing so scrubbing keeps up
+    g2.setRenderingHints(scrubbing ? SCRUB_HINTS : QUALITY_HINTS);
+    GlyphLayer layer = getGlyphLayer(index, dim, scale);
+    int code = font.getCode(index);
     if (showLR) {
       // Draw left/right lines
-      g2.setStroke(new BasicStroke((1.0f)));
+      g2.setStroke(LR_STROKE);
       g2.setPaint(Color.red);
-      g2.draw(af.createTransformedShape(new Line2D.Double(item.left, bnds.y, item.left, bnds.y + bnds.height)));
-      g2.draw(af.createTransformedShape(new Line2D.Double(item.right, bnds.y, item.right, bnds.y + bnds.height)));
+      g2.draw(layer.left);
+      g2.draw(layer.right);
     }
-    g2.setStroke(new BasicStroke((2.0f)));
+    g2.setStroke(GLYPH_STROKE);
     g2.setPaint(Color.black);
-    g2.draw(af.createTransformedShape(item.path));
-    g2.drawString("Code:   " + item.code + "  (0x" + Integer.toHexString(item.code).toUpperCase() + ")", 20, 20);
-    if (ascii.containsKey(item.code)) {
-      int asc = ascii.get(item.code);
+    g2.draw(layer.glyph);
+    g2.drawString("Code:   " + code + "  (0x" + Integer.toHexString(code).toUpperCase() + ")", 20, 20);
+    int asc = font.getAscii(code);
+    if (asc >= 0) {
       g2.drawString("ASCII:  " + asc + "  (0x" + Integer.toHexString(asc).toUpperCase() + ")", 20, 35);
-      g2.drawString("Family: " + family.get(item.code), 20, 50);
+      g2.drawString("Family: " + font.getFamily(code), 20, 50);
     }
+    Diagnostics.end(Diagnostics.Stage.PAINT, start, event, 0, null);
   }
 
-  private Map<String,List<Integer>> getFamiles () {
-    return families;
+  private Map<String,int[]> getFamiles () {
+    return font.getFamilies();
   }
   private int glyphCount () {
-    return glyphs.size();
+    return font.glyphCount();
   }
 
   private void nextGlyph () {
-    if (index < glyphs.size() - 1) {
+    if (index < font.glyphCount() - 1) {
       index++;
       repaint();
     }
@@ -192,102 +202,369 @@ class HersheyView extends JPanel {
     }
   }
 
-  private void setGlyph (int index) {
+  /**
+   *  Select glyph by index
+   *  @param scrub true while the slider is being dragged, which draws without antialiasing until
+   *  a final call with scrub false repaints at full quality
+   */
+  void setGlyph (int index, boolean scrub) {
     this.index = index;
+    scrubbing = scrub;
+    repaint();
+  }
+
+  /**
+   *  Swap in an updated font, keeping the same Hershey code selected if it still exists.  Cached
+   *  thumbnails of unchanged families are kept, and changed ones are rendered again in the background.
+   */
+  void updateFont (HersheyFont.Changes changes) {
+    int code = font.getCode(index);
+    font = changes.font;
+    int idx = font.indexOf(code);
+    index = idx >= 0 ? idx : Math.min(index, font.glyphCount() - 1);
+    atlas.update(font, changes.families);
+    glyphIndex = null;
+    glyphCache.clear();
+    if (fontListener != null) {
+      fontListener.run();
+    }
     repaint();
   }
 
-  private Path2D.Double getShape (int code) {
-    return glyphs.get(hIndex.get(code)).path;
+  /**
+   *  Load the font from a directory of Hurt format sources and reload it whenever they're edited.  The
+   *  font is loaded on a background thread and swapped in on the event dispatch thread.
+   *  @param dir directory to watch, or null to stop watching (the current font stays in use)
+   */
+  private void watchFonts (File dir) {
+    int generation = ++watchGeneration;
+    watchDir = dir;
+    if (fontWatcher != null) {
+      try {
+        fontWatcher.close();
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      fontWatcher = null;
+    }
+    if (dir == null) {
+      return;
+    }
+    HersheyFont current = font;
+    new SwingWorker<FontWatcher,Void>() {
+      @Override
+      protected FontWatcher doInBackground () throws IOException {
+        return new FontWatcher(dir, current);
+      }
+
+      @Override
+      protected void done () {
+        try {
+          FontWatcher watcher = get();
+          if (generation != watchGeneration) {
+            // Watching was stopped or moved to another directory while this one loaded
+            watcher.close();
+            return;
+          }
+          fontWatcher = watcher;
+          updateFont(fontWatcher.getChanges());
+          fontWatcher.start(HersheyView.this::updateFont);
+        } catch (Exception ex) {
+          ex.printStackTrace();
+          if (generation == watchGeneration) {
+            watchDir = null;
+            showMessageDialog(HersheyView.this, "Unable to load fonts from " + dir + ": " + ex.getMessage(), "Error",
+                              PLAIN_MESSAGE);
+          }
+        }
+      }
+    }.execute();
+  }
+
+  /**
+   *  Get the shape similarity index, building it the first time it's needed
+   */
+  private GlyphIndex getGlyphIndex () {
+    if (glyphIndex == null) {
+      glyphIndex = new GlyphIndex(font);
+    }
+    return glyphIndex;
+  }
+
+  private Icon[] getThumbnails (String family) {
+    return atlas.getIcons(family);
   }
 
   private void selectHersheyCode (int code) {
-    this.index= hIndex.get(code);
+    this.index= font.indexOf(code);
     repaint();
   }
 
-  private void showGrid (boolean enable) {
+  void showGrid (boolean enable) {
     showGrid = enable;
     repaint();
   }
 
-  private void showLeftRight (boolean enable) {
+  void showLeftRight (boolean enable) {
     showLR = enable;
     repaint();
   }
 
-  private void showOrigin (boolean enable) {
+  void showOrigin (boolean enable) {
     showOrigin = enable;
     repaint();
   }
 
-  private void setZoom (String zoom) {
-    this.zoom = Double.parseDouble(zoom);
+  /**
+   *  Draw the glyph with curves fitted to its strokes at zoom levels of 16 and above
+   */
+  void setSmooth (boolean smooth) {
+    this.smooth = smooth;
     repaint();
   }
 
-  private Line2D.Double[] getVectors (int code) {
-    return getVectors(glyphs.get(hIndex.get(code)));
+  void setZoom (String zoom) {
+    this.zoom = Double.parseDouble(zoom);
+    repaint();
   }
 
   private Line2D.Double[] getSelectedVectors () {
-    return getVectors(glyphs.get(index));
-  }
-
-  private HersheyGlyph getGlyph (int code) {
-    return glyphs.get(hIndex.get(code));
+    return font.getVectors(index);
   }
 
-  private  Line2D.Double[] getVectors (HersheyGlyph item) {
-    ArrayList<Line2D.Double> lines = new ArrayList<>();
-    PathIterator pi = item.path.getPathIterator(new AffineTransform());
-    double xx = 0, yy = 0;
-    double mX = 0, mY = 0;
-    while (!pi.isDone()) {
-      double[] coords = new double[6];
-      int type = pi.currentSegment(coords);
-      switch (type) {
-      case PathIterator.SEG_CLOSE:
-        lines.add(new Line2D.Double(xx, yy, mX, mY));
-        break;
-      case PathIterator.SEG_MOVETO:
-        mX = xx = coords[0];
-        mY = yy = coords[1];
-        break;
-      case PathIterator.SEG_LINETO:
-        lines.add(new Line2D.Double(xx, yy, xx = coords[0], yy = coords[1]));
-        break;
-      default:
-        System.out.println("Error, Unknown PathIterator Type: " + type);
-        break;
+  /**
+   *  Run a headless command, if one is given
+   *  @return true if args named a command
+   */
+  private static boolean runCommand (String[] args) throws IOException, InterruptedException {
+    if (args.length == 2 && "-compile".equals(args[0])) {
+      // Build step: java -jar HersheyView.jar -compile hershey.bin
+      HersheyFont.compile(new File(args[1]));
+      return true;
+    } else if (args.length == 3 && "-travel".equals(args[0])) {
+      // Report pen travel saved by PenPlanner: java -jar HersheyView.jar -travel "Roman Simplex" "Some text"
+      Polylines lines = new Polylines();
+      new HersheyLayout(HersheyFont.load(), args[1]).layout(args[2].replace("\\n", "\n"), lines);
+      for (PenPlanner.Scope scope : PenPlanner.Scope.values()) {
+        PenPlanner.Stats stats = new PenPlanner().setScope(scope).optimize(lines, new Polylines());
+        System.out.println(scope + ": " + stats);
+      }
+      return true;
+    } else if (args.length >= 3 && "-export".equals(args[0])) {
+      // Export families: java -jar HersheyView.jar -export <txt|svg|h|hfam> <dir> [family ...]
+      HersheyFont font = HersheyFont.load();
+      FontExporter.Format format = FontExporter.getFormat(args[1]);
+      File dir = new File(args[2]);
+      dir.mkdirs();
+      Collection<String> families = args.length > 3 ? Arrays.asList(args).subList(3, args.length) : font.getFamilies().keySet();
+      long start = System.nanoTime();
+      List<File> files = new FontExporter(font).exportAll(families, format, dir, Runtime.getRuntime().availableProcessors(),
+        (done, total, family) -> System.out.println("[" + done + "/" + total + "] " + family));
+      System.out.println("Exported " + files.size() + " files in " + (System.nanoTime() - start) / 1000000 + " ms");
+      return true;
+    } else if (args.length >= 4 && "-bitmaps".equals(args[0])) {
+      // Generate bitmap fonts: java -jar HersheyView.jar -bitmaps <dir> <heights, e.g. 8,12,16> <strokes, e.g. 1,1.5> [family ...]
+      System.setProperty("java.awt.headless", "true");
+      HersheyFont font = HersheyFont.load();
+      File dir = new File(args[1]);
+      dir.mkdirs();
+      int[] heights = Arrays.stream(args[2].split(",")).mapToInt(Integer::parseInt).toArray();
+      String[] strokeList = args[3].split(",");
+      float[] strokes = new float[strokeList.length];
+      for (int ii = 0; ii < strokes.length; ii++) {
+        strokes[ii] = Float.parseFloat(strokeList[ii]);
+      }
+      Collection<String> families = args.length > 4 ? Arrays.asList(args).subList(4, args.length) : font.getFamilies().keySet();
+      long start = System.nanoTime();
+      int files = new BitmapFonts(font).generate(families, heights, strokes, dir,
+                                                 Integer.getInteger("hershey.threads", Runtime.getRuntime().availableProcessors()));
+      System.out.println("Wrote " + files + " files in " + (System.nanoTime() - start) / 1000000 + " ms");
+      return true;
+    } else if (args.length >= 4 && "-outlines".equals(args[0])) {
+      // Export filled stroke outlines: java -jar HersheyView.jar -outlines <font|paths> <dir> <pen, e.g. 2,round,round> [family ...]
+      HersheyFont font = HersheyFont.load();
+      GlyphOutlines outlines = new GlyphOutlines(font, GlyphOutlines.Pen.parse(args[3]));
+      FontExporter.Format format;
+      if ("font".equals(args[1])) {
+        format = outlines.getFontFormat();
+      } else if ("paths".equals(args[1])) {
+        format = outlines.getPathsFormat();
+      } else {
+        throw new IllegalArgumentException("Unknown outline format: " + args[1]);
+      }
+      File dir = new File(args[2]);
+      dir.mkdirs();
+      Collection<String> families = args.length > 4 ? Arrays.asList(args).subList(4, args.length) : font.getFamilies().keySet();
+      long start = System.nanoTime();
+      List<File> files = new FontExporter(font).exportAll(families, format, dir, Runtime.getRuntime().availableProcessors(), null);
+      System.out.println("Exported " + files.size() + " files in " + (System.nanoTime() - start) / 1000000 + " ms");
+      return true;
+    } else if (args.length >= 2 && "-similar".equals(args[0])) {
+      // List glyphs shaped like a glyph: java -jar HersheyView.jar -similar <code> [k]
+      HersheyFont font = HersheyFont.load();
+      int glyph = font.indexOf(Integer.parseInt(args[1]));
+      if (glyph < 0) {
+        throw new IllegalArgumentException("Unknown Hershey code: " + args[1]);
+      }
+      GlyphIndex index = new GlyphIndex(font);
+      long start = System.nanoTime();
+      int[] similar = index.findSimilar(glyph, args.length > 2 ? Integer.parseInt(args[2]) : 10);
+      long time = System.nanoTime() - start;
+      for (int gdx : similar) {
+        System.out.printf("%.3f  %s%n", index.getDistance(glyph, gdx), SketchSearch.describe(font, gdx));
+      }
+      System.out.printf("Query took %.3f ms%n", time / 1e6);
+      return true;
+    } else if (args.length >= 4 && ("-gcode".equals(args[0]) || "-hpgl".equals(args[0]))) {
+      // Stream text to a plotter file: java -jar HersheyView.jar -gcode <family> <input> <output> [options] (see PlotStream)
+      String[] plotArgs = args.clone();
+      plotArgs[0] = args[0].substring(1);
+      PlotStream.main(plotArgs);
+      return true;
+    } else if (args.length >= 1 && "-serve".equals(args[0])) {
+      // Run the render service: java -jar HersheyView.jar -serve [port] [cache MB]
+      System.setProperty("java.awt.headless", "true");
+      RenderServer server = new RenderServer(HersheyFont.load(), args.length > 1 ? Integer.parseInt(args[1]) : 8080,
+                                             (args.length > 2 ? Long.parseLong(args[2]) : 64) << 20);
+      server.start();
+      System.out.println("Serving on http://localhost:" + server.getPort() + "/ using " + server.getThreading());
+      server.awaitTermination();
+      return true;
+    } else if (args.length >= 1 && "-duplicates".equals(args[0])) {
+      // List near duplicate glyphs: java -jar HersheyView.jar -duplicates [max distance]
+      HersheyFont font = HersheyFont.load();
+      GlyphIndex index = new GlyphIndex(font);
+      for (int[] pair : index.findNearDuplicates(args.length > 1 ? Float.parseFloat(args[1]) : 0.05f)) {
+        System.out.printf("%.3f  %s  ~  %s%n", index.getDistance(pair[0], pair[1]), SketchSearch.describe(font, pair[0]),
+                          SketchSearch.describe(font, pair[1]));
+      }
+      return true;
+    } else if (args.length == 2 && "-metrics".equals(args[0])) {
+      // Print a family's metrics and kerning pairs: java -jar HersheyView.jar -metrics "Roman Simplex"
+      GlyphMetrics metrics = GlyphMetrics.get(HersheyFont.load());
+      GlyphMetrics.Family fam = metrics.getFamily(args[1]);
+      long start = System.nanoTime();
+      byte[] kern = metrics.getKerning(args[1]);
+      long time = System.nanoTime() - start;
+      System.out.println("Baseline: " + fam.baseline + "  Cap height: " + fam.capHeight + "  x-height: " + fam.xHeight +
+                         "  Ascent: " + fam.ascent + "  Descent: " + fam.descent);
+      int pairs = 0;
+      for (int ii = 0; ii < kern.length; ii++) {
+        if (kern[ii] != 0 && ii / 96 > 0 && ii % 96 > 0) {
+          System.out.print((pairs++ % 8 == 0 ? "\n" : "  ") + (char) (ii / 96 + 32) + (char) (ii % 96 + 32) + " " + kern[ii]);
+        }
       }
-      pi.next();
+      System.out.printf("%n%d kerning pairs (tables loaded or computed in %.1f ms)%n", pairs, time / 1e6);
+      return true;
     }
-    return lines.toArray(new Line2D.Double[0]);
+    return false;
   }
 
-  static class HersheyGlyph {
-    private int           code, left, right;
-    private Path2D.Double path;
-
-    HersheyGlyph (int code, Path2D.Double path, int left, int right) {
-      this.code = code;
-      this.path = path;
-      this.left = left;
-      this.right = right;
+  /**
+   *  Ask for an output directory and format, then export all families on a background worker pool
+   *  with a progress monitor that can cancel the export
+   */
+  private static void exportAllFamilies (JFrame frame, HersheyFont font, Preferences prefs) {
+    JFileChooser fileChooser = new JFileChooser();
+    fileChooser.setDialogTitle("Export All Families to Directory");
+    fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+    fileChooser.setSelectedFile(new File(prefs.get("export.dir", prefs.get("default.dir", "/"))));
+    JComboBox<String> formats = new JComboBox<>();
+    for (FontExporter.Format format : FontExporter.FORMATS) {
+      formats.addItem(format.getName() + " (*." + format.getExtension() + ")");
+    }
+    JPanel accessory = new JPanel(new BorderLayout());
+    accessory.add(new JLabel("Format:"), BorderLayout.NORTH);
+    accessory.add(formats, BorderLayout.SOUTH);
+    fileChooser.setAccessory(accessory);
+    if (fileChooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+      return;
     }
+    File dir = fileChooser.getSelectedFile();
+    prefs.put("export.dir", dir.getAbsolutePath());
+    FontExporter.Format format = FontExporter.FORMATS[formats.getSelectedIndex()];
+    Set<String> families = font.getFamilies().keySet();
+    FontExporter exporter = new FontExporter(font);
+    ProgressMonitor monitor = new ProgressMonitor(frame, "Exporting " + format.getName(), "", 0, families.size());
+    monitor.setMillisToDecideToPopup(0);
+    new SwingWorker<List<File>,String>() {
+      @Override
+      protected List<File> doInBackground () throws Exception {
+        dir.mkdirs();
+        return exporter.exportAll(families, format, dir, Runtime.getRuntime().availableProcessors(), (done, total, family) -> {
+          setProgress(done * 100 / total);
+          publish(family);
+          if (monitor.isCanceled()) {
+            exporter.cancel();
+          }
+        });
+      }
+
+      @Override
+      protected void process (List<String> chunks) {
+        monitor.setNote(chunks.get(chunks.size() - 1));
+        monitor.setProgress(getProgress() * families.size() / 100);
+        if (monitor.isCanceled()) {
+          exporter.cancel();
+        }
+      }
+
+      @Override
+      protected void done () {
+        monitor.close();
+        try {
+          List<File> files = get();
+          String msg = "Exported " + files.size() + " of " + families.size() + " families to " + dir;
+          showMessageDialog(frame, exporter.isCancelled() ? msg + " (cancelled)" : msg, "Export", PLAIN_MESSAGE);
+        } catch (Exception ex) {
+          showMessageDialog(frame, "Unable to export families", "Error", PLAIN_MESSAGE);
+          ex.printStackTrace();
+        }
+      }
+    }.execute();
   }
 
   public static void main (String[] args) {
+    // Write timing stats (or a Flight Recording, for a .jfr file) on exit: -Dhershey.diagnostics=<file>
+    Diagnostics.dumpOnExit(System.getProperty("hershey.diagnostics"));
+    if (args.length > 0) {
+      try {
+        if (runCommand(args)) {
+          return;
+        }
+      } catch (Exception ex) {
+        ex.printStackTrace();
+        System.exit(1);
+      }
+    }
     JFrame frame = new JFrame("Hershey Font Viewer");
     Preferences  prefs = Preferences.userRoot().node(frame.getClass().getName());
     frame.setResizable(false);
     frame.setLayout(new BorderLayout());
     try {
-      HersheyView hershey = new HersheyView();
+      // Load from (and watch) a directory of font sources if one is set: -Dhershey.dir=<dir>
+      String fontDir = System.getProperty("hershey.dir", prefs.get("font.dir", null));
+      FontWatcher watcher = null;
+      if (fontDir != null) {
+        try {
+          watcher = new FontWatcher(new File(fontDir), null);
+        } catch (IOException ex) {
+          ex.printStackTrace();
+        }
+      }
+      HersheyView hershey = watcher != null ? new HersheyView(watcher.getFont()) : new HersheyView();
+      if (watcher != null) {
+        hershey.fontWatcher = watcher;
+        hershey.watchDir = watcher.getDirectory();
+        watcher.start(hershey::updateFont);
+      }
       frame.add(hershey, BorderLayout.CENTER);
       JSlider slider = new JSlider(JSlider.HORIZONTAL, 0, hershey.glyphCount() - 1, 0);
-      slider.addChangeListener(ev -> hershey.setGlyph(slider.getValue()));
+      slider.addChangeListener(ev -> hershey.setGlyph(slider.getValue(), slider.getValueIsAdjusting()));
+      hershey.fontListener = () -> {
+        slider.setMaximum(hershey.glyphCount() - 1);
+        slider.setValue(hershey.index);
+      };
       JPanel bottomPane = new JPanel(new BorderLayout());
       bottomPane.setBorder(BorderFactory.createLineBorder(Color.gray, 1));
       bottomPane.add(slider, BorderLayout.CENTER);
@@ -313,6 +590,10 @@ class HersheyView extends JPanel {
       JCheckBox leftRight = new JCheckBox("Show L/R");
       controls.add(leftRight);
       leftRight.addActionListener(ev -> hershey.showLeftRight(leftRight.isSelected()));
+      JCheckBox smooth = new JCheckBox("Smooth");
+      smooth.setToolTipText("Draw strokes as smooth curves at zoom 16 and above");
+      controls.add(smooth);
+      smooth.addActionListener(ev -> hershey.setSmooth(smooth.isSelected()));
       JComboBox<String> zoom = new JComboBox<>(new String[] {"8", "16", "32", "64"});
       zoom.setSelectedIndex(1);
       hershey.setZoom((String) zoom.getSelectedItem());
@@ -351,9 +632,40 @@ class HersheyView extends JPanel {
       JButton find = new JButton("Find Glyph");
       find.addActionListener(ae -> {
         JPopupMenu families = new JPopupMenu("");
-        Map<String,List<Integer>> fMap = hershey.getFamiles();
+        Map<String,int[]> fMap = hershey.getFamiles();
+        if ((ae.getModifiers() & InputEvent.SHIFT_MASK) != 0) {
+          JMenuItem exportAll = new JMenuItem("Export All Families...");
+          exportAll.addActionListener(ev -> exportAllFamilies(frame, hershey.font, prefs));
+          families.add(exportAll);
+          JMenuItem diagnostics = new JMenuItem("Diagnostics...");
+          diagnostics.addActionListener(ev -> DiagnosticsView.showDiagnostics(frame));
+          families.add(diagnostics);
+          if (hershey.watchDir == null) {
+            JMenuItem watch = new JMenuItem("Watch Font Directory...");
+            watch.setToolTipText("Load hershey.txt and ascii.txt from a directory and reload them when they're edited");
+            watch.addActionListener(ev -> {
+              JFileChooser chooser = new JFileChooser();
+              chooser.setDialogTitle("Watch Font Directory");
+              chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+              chooser.setSelectedFile(new File(prefs.get("font.dir", prefs.get("default.dir", "/"))));
+              if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                prefs.put("font.dir", chooser.getSelectedFile().getAbsolutePath());
+                hershey.watchFonts(chooser.getSelectedFile());
+              }
+            });
+            families.add(watch);
+          } else {
+            JMenuItem unwatch = new JMenuItem("Stop Watching " + hershey.watchDir.getName());
+            unwatch.addActionListener(ev -> {
+              prefs.remove("font.dir");
+              hershey.watchFonts(null);
+            });
+            families.add(unwatch);
+          }
+          families.addSeparator();
+        }
         for (String familiy : fMap.keySet()) {
-          List<Integer> hCodes = fMap.get(familiy);
+          int[] hCodes = fMap.get(familiy);
           JMenu fMenu = new JMenu(familiy);
           families.add(fMenu);
           fMenu.addMenuListener(new MenuListener() {
@@ -377,72 +689,26 @@ class HersheyView extends JPanel {
                       if (!fPath.contains(".")) {
                         sFile = new File(fPath + ".txt");
                       }
-                      try {
-                        if (!sFile.exists() ||
-                          showConfirmDialog(frame, "Overwrite Existing file?", "Warning", YES_NO_OPTION, PLAIN_MESSAGE) == OK_OPTION) {
-                          List<Integer> codes = hershey.families.get(familiy);
-
-                          StringBuilder buf = new StringBuilder("// Font: " + familiy + " - ");
-                          Rectangle rect = new Rectangle(0, 0, 0, 0);
-                          for (int ii = 32; ii < 128; ii++) {
-                            Line2D.Double[] vecs = hershey.getVectors(codes.get(ii - 32));
-                            for (Line2D.Double line : vecs) {
-                              rect.x = Math.min(rect.x, (int) line.x1);
-                              rect.x = Math.min(rect.x, (int) line.x2);
-                              rect.y = Math.min(rect.y, (int) line.y1);
-                              rect.y = Math.min(rect.y, (int) line.y2);
-                              rect.width = Math.max(rect.width, (int) line.x1);
-                              rect.width = Math.max(rect.width, (int) line.x2);
-                              rect.height = Math.max(rect.height, (int) line.y1);
-                              rect.height = Math.max(rect.height, (int) line.y2);
-                            }
+                      if (!sFile.exists() ||
+                        showConfirmDialog(frame, "Overwrite Existing file?", "Warning", YES_NO_OPTION, PLAIN_MESSAGE) == OK_OPTION) {
+                        File file = sFile;
+                        new SwingWorker<Void,Void>() {
+                          @Override
+                          protected Void doInBackground () throws IOException {
+                            FontExporter.exportFamily(hershey.font, familiy, FontExporter.TEXT, file);
+                            return null;
                           }
-                          buf.append("Bounds {");
-                          buf.append(Integer.toString(rect.x));
-                          buf.append(", ");
-                          buf.append(Integer.toString(rect.y));
-                          buf.append(", ");
-                          buf.append(Integer.toString(rect.width));
-                          buf.append(", ");
-                          buf.append(Integer.toString(rect.height));
-                          buf.append("} ");
-                          buf.append(Integer.toString(rect.width - rect.x));
-                          buf.append(" x ");
-                          buf.append(Integer.toString(rect.height - rect.y));
-                          buf.append(" - Note: {left,right},{x1,y1,x2,y2},..\n");
-
-                          for (int ii = 32; ii < 128; ii++) {
-                            buf.append("'");
-                            buf.append((char) ii);
-                            buf.append("':");
-                            HersheyGlyph glyph =  hershey.getGlyph(codes.get(ii - 32));
-                            Line2D.Double[] vecs = hershey.getVectors(glyph);
-                            buf.append(Integer.toString(glyph.left));
-                            buf.append(",");
-                            buf.append(Integer.toString(glyph.right));
-                            buf.append(vecs.length > 0 ? "|" : "");
-                            for (int jj = 0; jj < vecs.length; jj++) {
-                              Line2D.Double line = vecs[jj];
-                              buf.append(Integer.toString((int) line.x1));
-                              buf.append(",");
-                              buf.append(Integer.toString((int) line.y1));
-                              buf.append(",");
-                              buf.append(Integer.toString((int) line.x2));
-                              buf.append(",");
-                              buf.append(Integer.toString((int) line.y2));
-                              buf.append(jj < (vecs.length - 1) ? "|" : "");
+
+                          @Override
+                          protected void done () {
+                            try {
+                              get();
+                            } catch (Exception ex) {
+                              showMessageDialog(frame, "Unable to save file", "Error", PLAIN_MESSAGE);
+                              ex.printStackTrace();
                             }
-                            buf.append("\n");
                           }
-                          buf.append("\n");
-                          FileOutputStream fileOut = new FileOutputStream(sFile);
-                          fileOut.write(buf.toString().getBytes());
-                          fileOut.close();
-                          fileOut.close();
-                        }
-                      } catch (IOException ex) {
-                        showMessageDialog(frame, "Unable to save file", "Error", PLAIN_MESSAGE);
-                        ex.printStackTrace();
+                        }.execute();
                       }
                       prefs.put("default.dir", sFile.getAbsolutePath());
                     }
@@ -453,9 +719,10 @@ class HersheyView extends JPanel {
                 if (((JMenu)((JMenu) es.getSource()).getComponent()).getItemCount() == 0) {
                   JPopupMenu chars = fMenu.getPopupMenu();
                   chars.setLayout(new GridLayout(12, 8));
+                  Icon[] icons = hershey.getThumbnails(familiy);
                   for (int ii = 32; ii < 128; ii++) {
-                    int hCode = hCodes.get(ii - 32);
-                    JMenuItem mItem = new JMenuItem(new Glyph(hershey.getShape(hCode)));
+                    int hCode = hCodes[ii - 32];
+                    JMenuItem mItem = new JMenuItem(icons[ii - 32]);
                     mItem.setIconTextGap(0);
                     mItem.addActionListener(ev -> hershey.selectHersheyCode(hCode));
                     Dimension dim = mItem.getPreferredSize();
@@ -478,6 +745,20 @@ class HersheyView extends JPanel {
         families.show(find, find.getWidth() / 2, find.getHeight() / 2);
       });
       controls.add(find);
+      // Add "Catalog" button to browse all glyphs in a scrolling grid
+      JButton catalog = new JButton("Catalog");
+      catalog.addActionListener(ev -> CatalogView.showCatalog(frame, hershey.font, slider::setValue));
+      controls.add(catalog);
+      // Add "Search" button to find glyphs by drawing a rough shape
+      JButton search = new JButton("Search");
+      search.addActionListener(ev -> SketchSearch.showSearch(frame, hershey.font, hershey.getGlyphIndex(),
+                                                             () -> hershey.font.getCode(hershey.index), code -> {
+        int idx = hershey.font.indexOf(code);
+        if (idx >= 0) {
+          slider.setValue(idx);
+        }
+      }));
+      controls.add(search);
       frame.add(controls, BorderLayout.NORTH);
       frame.add(bottomPane, BorderLayout.SOUTH);
       frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
@@ -485,6 +766,8 @@ class HersheyView extends JPanel {
       frame.setLocationRelativeTo(null);
       frame.setResizable(true);
       frame.setVisible(true);
+      // Render "Find Glyph" thumbnails before they're needed
+      hershey.atlas.prewarm(hershey.getFamiles().keySet());
     } catch (Exception ex) {
       ex.printStackTrace();
       showMessageDialog(null, ex.getMessage(), "Error", PLAIN_MESSAGE);
@@ -492,27 +775,6 @@ class HersheyView extends JPanel {
     }
   }
 
-  static class Glyph extends ImageIcon {
-    private static Rectangle bounds = new Rectangle(24, 26);
-
-    Glyph (Path2D.Double path) {
-      BufferedImage bImg = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_RGB);
-      Graphics2D g2 = bImg.createGraphics();
-      RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-      hints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-      g2.setRenderingHints(hints);
-      g2.setStroke(new BasicStroke((1.0f)));
-      g2.setBackground(Color.white);
-      g2.clearRect(0, 0, bounds.width, bounds.height);
-      g2.setColor(Color.darkGray);
-      AffineTransform at = AffineTransform.getTranslateInstance(bounds.width / 2.0, bounds.height / 2.0);
-      g2.draw(at.createTransformedShape(path));
-      g2.setColor(Color.white);
-      setImage(bImg);
-    }
-  }
-
-
   private static String pad (String val) {
     StringBuilder valBuilder = new StringBuilder(val);
     while (valBuilder.length() < 3) {
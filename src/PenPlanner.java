@@ -0,0 +1,350 @@
+import java.util.Arrays;
+
+/**
+ *  Reduces pen-up travel for plotters and engravers.  Strokes that share an end point are joined
+ *  into longer polylines, then the strokes of each glyph (or of each whole line) are reordered with a
+ *  nearest neighbour tour that's improved by 2-opt moves until no move helps or the time budget runs
+ *  out.  Any stroke may be drawn in reverse.  Distances are in the units of the input Polylines.
+ */
+class PenPlanner {
+  enum Scope {GLYPH, LINE}
+
+  private static final float  EPSILON = 1e-4f;
+  private Scope               scope = Scope.LINE;
+  private long                budget = 100;       // Milliseconds for 2-opt improvement per optimize() call
+  private float               homeX, homeY;
+  // Working storage, reused between groups
+  private final Polylines     joined = new Polylines();
+  private boolean[]           used = new boolean[64];
+  private int[]               order = new int[64];
+  private boolean[]           rev = new boolean[64];
+  private int[]               chain = new int[64];
+
+  static class Stats {
+    double  penDown, penUpBefore, penUpAfter;
+    int     strokesBefore, strokesAfter;
+
+    @Override
+    public String toString () {
+      return String.format("Pen down: %.1f, pen up: %.1f -> %.1f (%.1f%% saved), strokes: %d -> %d",
+        penDown, penUpBefore, penUpAfter, penUpBefore > 0 ? (penUpBefore - penUpAfter) * 100 / penUpBefore : 0.0,
+        strokesBefore, strokesAfter);
+    }
+  }
+
+  /**
+   *  Set whether strokes are reordered within each glyph (glyphs keep their order) or across each line
+   */
+  PenPlanner setScope (Scope scope) {
+    this.scope = scope;
+    return this;
+  }
+
+  /**
+   *  Set the time allowed for 2-opt improvement.  Joining and the nearest neighbour tour always complete.
+   */
+  PenPlanner setTimeBudget (long millis) {
+    this.budget = millis;
+    return this;
+  }
+
+  /**
+   *  Set the pen position before the first stroke, which is included in pen-up travel
+   */
+  PenPlanner setHome (float x, float y) {
+    homeX = x;
+    homeY = y;
+    return this;
+  }
+
+  /**
+   *  Reorder the strokes of in and write them to out (which is cleared first).  With GLYPH scope out keeps
+   *  the glyph and line groups of in; with LINE scope each line becomes a single glyph group.
+   *  @return distances before and after
+   */
+  Stats optimize (Polylines in, Polylines out) {
+    long deadline = System.nanoTime() + budget * 1000000L;
+    Stats stats = new Stats();
+    stats.penDown = penDownDistance(in);
+    stats.penUpBefore = penUpDistance(in, homeX, homeY);
+    stats.strokesBefore = in.size();
+    out.clear();
+    float[] pen = {homeX, homeY};
+    for (int line = 0; line < in.lines; line++) {
+      out.beginLine();
+      int gFirst = in.lineStart[line];
+      int gLast = line + 1 < in.lines ? in.lineStart[line + 1] : in.glyphs;
+      if (scope == Scope.LINE) {
+        out.beginGlyph();
+        plan(in, polyStart(in, gFirst), polyStart(in, gLast), pen, deadline, out);
+      } else {
+        for (int glyph = gFirst; glyph < gLast; glyph++) {
+          out.beginGlyph();
+          plan(in, polyStart(in, glyph), polyStart(in, glyph + 1), pen, deadline, out);
+        }
+      }
+    }
+    if (in.lines == 0 && in.size() > 0) {
+      // Polylines without line or glyph groups are treated as one group
+      out.beginLine();
+      out.beginGlyph();
+      plan(in, 0, in.size(), pen, deadline, out);
+    }
+    out.trim();
+    stats.penUpAfter = penUpDistance(out, homeX, homeY);
+    stats.strokesAfter = out.size();
+    return stats;
+  }
+
+  private static int polyStart (Polylines in, int glyph) {
+    return glyph < in.glyphs ? in.glyphStart[glyph] : in.size();
+  }
+
+  /**
+   *  Join, order and emit polylines first to last - 1 of in, starting from the pen position in pen[]
+   */
+  private void plan (Polylines in, int first, int last, float[] pen, long deadline, Polylines out) {
+    join(in, first, last);
+    int count = joined.size();
+    if (count == 0) {
+      return;
+    }
+    if (order.length < count) {
+      order = new int[count * 2];
+      rev = new boolean[count * 2];
+    }
+    nearestNeighbour(count, pen[0], pen[1]);
+    twoOpt(count, pen[0], pen[1], deadline);
+    for (int ii = 0; ii < count; ii++) {
+      int poly = order[ii];
+      int pts = joined.pointCount(poly);
+      for (int jj = 0; jj < pts; jj++) {
+        int pt = rev[ii] ? pts - 1 - jj : jj;
+        if (jj == 0) {
+          out.moveTo(joined.getX(poly, pt), joined.getY(poly, pt));
+        } else {
+          out.lineTo(joined.getX(poly, pt), joined.getY(poly, pt));
+        }
+      }
+    }
+    pen[0] = endX(count - 1);
+    pen[1] = endY(count - 1);
+  }
+
+  /**
+   *  Chain polylines that share end points into the joined buffer
+   */
+  private void join (Polylines in, int first, int last) {
+    joined.clear();
+    int count = last - first;
+    if (used.length < count) {
+      used = new boolean[count * 2];
+    }
+    if (chain.length < count * 2 + 1) {
+      chain = new int[count * 2 + 1];
+    }
+    Arrays.fill(used, 0, count, false);
+    for (int ii = 0; ii < count; ii++) {
+      if (used[ii]) {
+        continue;
+      }
+      used[ii] = true;
+      // Chain entries are stroke + 1, negated when the stroke is drawn in reverse
+      int head = count, tail = count;
+      chain[tail++] = ii + 1;
+      int link;
+      while ((link = findLink(in, first, count, chainX(in, first, chain[tail - 1], true),
+                              chainY(in, first, chain[tail - 1], true), false)) != 0) {
+        chain[tail++] = link;
+      }
+      while ((link = findLink(in, first, count, chainX(in, first, chain[head], false),
+                              chainY(in, first, chain[head], false), true)) != 0) {
+        chain[--head] = link;
+      }
+      boolean move = true;
+      for (int cc = head; cc < tail; cc++) {
+        int poly = first + Math.abs(chain[cc]) - 1;
+        boolean reversed = chain[cc] < 0;
+        int pts = in.pointCount(poly);
+        for (int jj = move ? 0 : 1; jj < pts; jj++) {
+          int pt = reversed ? pts - 1 - jj : jj;
+          if (move) {
+            joined.moveTo(in.getX(poly, pt), in.getY(poly, pt));
+            move = false;
+          } else {
+            joined.lineTo(in.getX(poly, pt), in.getY(poly, pt));
+          }
+        }
+      }
+    }
+    joined.trim();
+  }
+
+  /**
+   *  Find an unused stroke with an end point at x, y and mark it used
+   *  @param endsHere true to orient the stroke so it ends at x, y, false so it starts there
+   *  @return chain entry for the stroke, or 0 if none
+   */
+  private int findLink (Polylines in, int first, int count, float x, float y, boolean endsHere) {
+    for (int jj = 0; jj < count; jj++) {
+      if (!used[jj]) {
+        int poly = first + jj;
+        int last = in.pointCount(poly) - 1;
+        boolean atStart = near(in.getX(poly, 0), in.getY(poly, 0), x, y);
+        if (atStart || near(in.getX(poly, last), in.getY(poly, last), x, y)) {
+          used[jj] = true;
+          return atStart == endsHere ? -(jj + 1) : jj + 1;
+        }
+      }
+    }
+    return 0;
+  }
+
+  private static float chainX (Polylines in, int first, int entry, boolean tail) {
+    return firstX(in, first + Math.abs(entry) - 1, (entry < 0) != tail);
+  }
+
+  private static float chainY (Polylines in, int first, int entry, boolean tail) {
+    return firstY(in, first + Math.abs(entry) - 1, (entry < 0) != tail);
+  }
+
+  private static float firstX (Polylines in, int poly, boolean reversed) {
+    return in.getX(poly, reversed ? in.pointCount(poly) - 1 : 0);
+  }
+
+  private static float firstY (Polylines in, int poly, boolean reversed) {
+    return in.getY(poly, reversed ? in.pointCount(poly) - 1 : 0);
+  }
+
+  private static float lastX (Polylines in, int poly, boolean reversed) {
+    return firstX(in, poly, !reversed);
+  }
+
+  private static float lastY (Polylines in, int poly, boolean reversed) {
+    return firstY(in, poly, !reversed);
+  }
+
+  private static boolean near (float x1, float y1, float x2, float y2) {
+    return Math.abs(x1 - x2) < EPSILON && Math.abs(y1 - y2) < EPSILON;
+  }
+
+  // Start/end of the stroke at tour position pos, taking its direction into account
+  private float startX (int pos) {
+    return firstX(joined, order[pos], rev[pos]);
+  }
+
+  private float startY (int pos) {
+    return firstY(joined, order[pos], rev[pos]);
+  }
+
+  private float endX (int pos) {
+    return lastX(joined, order[pos], rev[pos]);
+  }
+
+  private float endY (int pos) {
+    return lastY(joined, order[pos], rev[pos]);
+  }
+
+  private void nearestNeighbour (int count, float x, float y) {
+    if (used.length < count) {
+      used = new boolean[count * 2];
+    }
+    Arrays.fill(used, 0, count, false);
+    for (int pos = 0; pos < count; pos++) {
+      int best = -1;
+      boolean bestRev = false;
+      double bestDist = Double.MAX_VALUE;
+      for (int ii = 0; ii < count; ii++) {
+        if (!used[ii]) {
+          int last = joined.pointCount(ii) - 1;
+          double d1 = dist(x, y, joined.getX(ii, 0), joined.getY(ii, 0));
+          double d2 = dist(x, y, joined.getX(ii, last), joined.getY(ii, last));
+          if (d1 < bestDist) {
+            best = ii;
+            bestDist = d1;
+            bestRev = false;
+          }
+          if (d2 < bestDist) {
+            best = ii;
+            bestDist = d2;
+            bestRev = true;
+          }
+        }
+      }
+      used[best] = true;
+      order[pos] = best;
+      rev[pos] = bestRev;
+      x = endX(pos);
+      y = endY(pos);
+    }
+  }
+
+  /**
+   *  Improve the tour by reversing runs of strokes (which also flips each stroke in the run)
+   */
+  private void twoOpt (int count, float homeX, float homeY, long deadline) {
+    boolean improved = true;
+    while (improved && System.nanoTime() < deadline) {
+      improved = false;
+      for (int ii = 0; ii < count; ii++) {
+        float px = ii > 0 ? endX(ii - 1) : homeX;
+        float py = ii > 0 ? endY(ii - 1) : homeY;
+        for (int jj = ii; jj < count; jj++) {
+          double before = dist(px, py, startX(ii), startY(ii));
+          double after = dist(px, py, endX(jj), endY(jj));
+          if (jj + 1 < count) {
+            before += dist(endX(jj), endY(jj), startX(jj + 1), startY(jj + 1));
+            after += dist(startX(ii), startY(ii), startX(jj + 1), startY(jj + 1));
+          }
+          if (after < before - EPSILON) {
+            reverse(ii, jj);
+            improved = true;
+          }
+        }
+      }
+    }
+  }
+
+  private void reverse (int from, int to) {
+    for (int ii = from, jj = to; ii <= jj; ii++, jj--) {
+      int tmp = order[ii];
+      order[ii] = order[jj];
+      order[jj] = tmp;
+      boolean flip = rev[ii];
+      rev[ii] = !rev[jj];
+      rev[jj] = !flip;
+    }
+  }
+
+  private static double dist (float x1, float y1, float x2, float y2) {
+    double dx = x2 - x1, dy = y2 - y1;
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   *  Total length of all strokes
+   */
+  static double penDownDistance (Polylines lines) {
+    double total = 0;
+    for (int ii = 0; ii < lines.size(); ii++) {
+      for (int jj = 1; jj < lines.pointCount(ii); jj++) {
+        total += dist(lines.getX(ii, jj - 1), lines.getY(ii, jj - 1), lines.getX(ii, jj), lines.getY(ii, jj));
+      }
+    }
+    return total;
+  }
+
+  /**
+   *  Total travel between strokes, starting from x, y
+   */
+  static double penUpDistance (Polylines lines, float x, float y) {
+    double total = 0;
+    for (int ii = 0; ii < lines.size(); ii++) {
+      total += dist(x, y, lines.getX(ii, 0), lines.getY(ii, 0));
+      int last = lines.pointCount(ii) - 1;
+      x = lines.getX(ii, last);
+      y = lines.getY(ii, last);
+    }
+    return total;
+  }
+}
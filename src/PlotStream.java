@@ -0,0 +1,492 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+/**
+ *  Streams text of any length to G-code or HPGL for pen plotters and engravers in constant memory.
+ *  Four stages run on their own threads, connected by bounded queues so a slow stage holds back the
+ *  ones before it:
+ *  <pre>
+ *    read       text is read in fixed size chunks
+ *    layout     chunks are broken into lines (wrapped at spaces, as HersheyLayout does) and each line
+ *               is laid out into a Polylines buffer
+ *    transform  strokes are optionally reordered to reduce pen travel (see PenPlanner) and mapped to
+ *               machine coordinates: millimeters with y up and the first line's origin at 0,0
+ *    emit       commands are formatted into a ByteBuffer and written to a channel
+ *  </pre>
+ *  Polylines buffers come from a fixed pool and are returned once written, so memory use depends on
+ *  the queue depth and the longest line, not on the length of the document.  Nothing here uses AWT,
+ *  so it can be run with "java -cp HersheyView.jar PlotStream ..." on machines without a display.
+ */
+class PlotStream {
+  enum Format {GCODE, HPGL}
+
+  private static final int              CHUNK = 4096;             // Characters per read
+  private static final int              MAX_LINE = 4096;          // Longest line before a forced break
+  private static final int              HPGL_UNITS = 40;          // HPGL plotter units per mm
+  private static final String           END_TEXT = new String("");
+  private static final Polylines        END_LINES = new Polylines();
+  private final HersheyLayout           layout;
+  private final String                  family;
+  private final Format                  format;
+  private int                           depth = 16;               // Capacity of each queue
+  private boolean                       optimize = true;
+  private double                        feed = 1000;              // G-code drawing feed rate, mm/min
+  private String                        penUp = "G0 Z1", penDown = "G1 Z0 F300";
+
+  static class Stats {
+    long    chars, lines, strokes, bytes;
+    double  penDown, penUp;
+
+    @Override
+    public String toString () {
+      return String.format(Locale.ROOT, "%d chars, %d lines, %d strokes, pen down %.1f mm, pen up %.1f mm, %d bytes",
+        chars, lines, strokes, penDown, penUp, bytes);
+    }
+  }
+
+  /**
+   *  @param font glyph source
+   *  @param family font family
+   *  @param format output format
+   *  @param size height of the 32 unit Hershey em, in mm
+   */
+  PlotStream (HersheyFont font, String family, Format format, double size) {
+    this.family = family;
+    this.format = format;
+    layout = new HersheyLayout(font, family).setScale(size / 32);
+  }
+
+  /**
+   *  Set maximum line width in mm, or 0 to only break lines at newlines
+   */
+  PlotStream setWrapWidth (double wrap) {
+    layout.setWrapWidth(wrap);
+    return this;
+  }
+
+  /**
+   *  Set distance between lines in mm
+   */
+  PlotStream setLineSpacing (double spacing) {
+    layout.setLineHeight(spacing / layout.getScale());
+    return this;
+  }
+
+  PlotStream setAlign (HersheyLayout.Align align) {
+    layout.setAlign(align);
+    return this;
+  }
+
+  /**
+   *  Set whether strokes of each line are reordered to reduce pen-up travel
+   */
+  PlotStream setOptimize (boolean optimize) {
+    this.optimize = optimize;
+    return this;
+  }
+
+  PlotStream setQueueDepth (int depth) {
+    this.depth = Math.max(1, depth);
+    return this;
+  }
+
+  /**
+   *  Set G-code feed rate for drawing moves, in mm/min
+   */
+  PlotStream setFeed (double feed) {
+    this.feed = feed;
+    return this;
+  }
+
+  /**
+   *  Set G-code commands that raise and lower the pen (or tool)
+   */
+  PlotStream setPenCommands (String up, String down) {
+    penUp = up;
+    penDown = down;
+    return this;
+  }
+
+  /**
+   *  Convert all the text from in and write it to out.  Neither is closed.
+   */
+  Stats run (Reader in, WritableByteChannel out) throws IOException, InterruptedException {
+    BlockingQueue<String> texts = new ArrayBlockingQueue<>(depth);
+    BlockingQueue<Polylines> laidOut = new ArrayBlockingQueue<>(depth);
+    BlockingQueue<Polylines> machine = new ArrayBlockingQueue<>(depth);
+    // Enough buffers to fill both queues with one more in each stage (and the planner's spare)
+    int buffers = depth * 2 + 4;
+    BlockingQueue<Polylines> free = new ArrayBlockingQueue<>(buffers);
+    for (int ii = 0; ii < buffers; ii++) {
+      free.add(new Polylines());
+    }
+    Stats stats = new Stats();
+    ExecutorService pool = Executors.newFixedThreadPool(4, r -> {
+      Thread thread = new Thread(r, "PlotStream");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ExecutorCompletionService<Void> stages = new ExecutorCompletionService<>(pool);
+    stages.submit(() -> {
+      read(in, texts, stats);
+      return null;
+    });
+    stages.submit(() -> {
+      layout(texts, free, laidOut, stats);
+      return null;
+    });
+    stages.submit(() -> {
+      transform(laidOut, free, machine);
+      return null;
+    });
+    stages.submit(() -> {
+      emit(machine, free, out, stats);
+      return null;
+    });
+    try {
+      for (int ii = 0; ii < 4; ii++) {
+        stages.take().get();
+      }
+    } catch (ExecutionException ex) {
+      // Stop the other stages, which may be blocked on a queue that will never fill or drain
+      pool.shutdownNow();
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      pool.shutdownNow();
+    }
+    return stats;
+  }
+
+  private static void read (Reader in, BlockingQueue<String> texts, Stats stats) throws IOException, InterruptedException {
+    char[] buf = new char[CHUNK];
+    int len;
+    while ((len = in.read(buf)) >= 0) {
+      if (len > 0) {
+        stats.chars += len;
+        texts.put(new String(buf, 0, len));
+      }
+    }
+    texts.put(END_TEXT);
+  }
+
+  /**
+   *  Break text into lines with HersheyLayout's rules and lay out each line.  A line is laid out once
+   *  its end is known, and one with no break in MAX_LINE characters is broken there.
+   */
+  private void layout (BlockingQueue<String> texts, BlockingQueue<Polylines> free, BlockingQueue<Polylines> laidOut, Stats stats)
+      throws InterruptedException {
+    double step = layout.getLineHeight() * layout.getScale();
+    StringBuilder pending = new StringBuilder();
+    boolean done = false, wrapped = false;
+    long lineNum = 0;
+    while (!done) {
+      String text = texts.take();
+      done = text == END_TEXT;
+      pending.append(text);
+      int pos = 0, len = pending.length();
+      while (pos < len) {
+        if (wrapped) {
+          // Drop the spaces where a line was wrapped, which may continue into the next chunk
+          int next = HersheyLayout.nextLine(pending, pos);
+          if (next == len && !done) {
+            pos = len;
+            break;
+          }
+          pos = next;
+          wrapped = false;
+          if (pos == len) {
+            break;
+          }
+        }
+        int end = layout.findLineEnd(pending, pos, null);
+        if (end == len && !done && len - pos < MAX_LINE) {
+          // Wait for the rest of the line
+          break;
+        }
+        boolean forced = end - pos > MAX_LINE;
+        if (forced) {
+          end = pos + MAX_LINE;
+        }
+        layoutLine(pending.subSequence(pos, end), lineNum++ * step, free, laidOut);
+        if (end == len) {
+          pos = len;
+        } else if (pending.charAt(end) == '\n') {
+          pos = end + 1;
+        } else {
+          pos = end;
+          wrapped = !forced;
+        }
+      }
+      pending.delete(0, pos);
+    }
+    stats.lines = lineNum;
+    laidOut.put(END_LINES);
+  }
+
+  private void layoutLine (CharSequence line, double y, BlockingQueue<Polylines> free, BlockingQueue<Polylines> laidOut)
+      throws InterruptedException {
+    if (line.length() > 0) {
+      Polylines lines = free.take();
+      lines.clear();
+      layout.layout(line, 0, y, lines);
+      laidOut.put(lines);
+    }
+  }
+
+  /**
+   *  Reorder strokes (if enabled) and map layout coordinates (y down) to machine coordinates (y up)
+   */
+  private void transform (BlockingQueue<Polylines> laidOut, BlockingQueue<Polylines> free, BlockingQueue<Polylines> machine)
+      throws InterruptedException {
+    PenPlanner planner = new PenPlanner().setScope(PenPlanner.Scope.LINE).setTimeBudget(10);
+    Polylines spare = optimize ? free.take() : null;
+    float penX = 0, penY = 0;
+    Polylines lines;
+    while ((lines = laidOut.take()) != END_LINES) {
+      if (optimize) {
+        planner.setHome(penX, penY);
+        planner.optimize(lines, spare);
+        Polylines tmp = lines;
+        lines = spare;
+        spare = tmp;
+      }
+      if (lines.size() > 0) {
+        int last = lines.size() - 1;
+        penX = lines.getX(last, lines.pointCount(last) - 1);
+        penY = lines.getY(last, lines.pointCount(last) - 1);
+      }
+      for (int ii = 1; ii < lines.points * 2; ii += 2) {
+        lines.xy[ii] = -lines.xy[ii];
+      }
+      machine.put(lines);
+    }
+    if (spare != null) {
+      free.put(spare);
+    }
+    machine.put(END_LINES);
+  }
+
+  private void emit (BlockingQueue<Polylines> machine, BlockingQueue<Polylines> free, WritableByteChannel out, Stats stats)
+      throws IOException, InterruptedException {
+    Output buf = new Output(out);
+    float penX = 0, penY = 0;
+    if (format == Format.GCODE) {
+      buf.put("; Hershey ").put(family).put('\n');
+      buf.put("G21\nG90\n").put(penUp).put('\n');
+    } else {
+      buf.put("IN;SP1;PU0,0;\n");
+    }
+    Polylines lines;
+    while ((lines = machine.take()) != END_LINES) {
+      for (int poly = 0; poly < lines.size(); poly++) {
+        int pts = lines.pointCount(poly);
+        float x = lines.getX(poly, 0), y = lines.getY(poly, 0);
+        stats.penUp += Math.hypot(x - penX, y - penY);
+        stats.strokes++;
+        if (format == Format.GCODE) {
+          buf.put("G0 X").put(x).put(" Y").put(y).put('\n').put(penDown).put('\n');
+        } else {
+          buf.put("PU").put(Math.round(x * HPGL_UNITS)).put(',').put(Math.round(y * HPGL_UNITS)).put(";PD");
+        }
+        for (int pt = 1; pt < pts; pt++) {
+          float nx = lines.getX(poly, pt), ny = lines.getY(poly, pt);
+          stats.penDown += Math.hypot(nx - x, ny - y);
+          x = nx;
+          y = ny;
+          if (format == Format.GCODE) {
+            buf.put("G1 X").put(x).put(" Y").put(y);
+            if (pt == 1) {
+              buf.put(" F").put((float) feed);
+            }
+            buf.put('\n');
+          } else {
+            buf.put(pt > 1 ? "," : "").put(Math.round(x * HPGL_UNITS)).put(',').put(Math.round(y * HPGL_UNITS));
+          }
+        }
+        if (format == Format.GCODE) {
+          buf.put(penUp).put('\n');
+        } else {
+          buf.put(";\n");
+        }
+        penX = x;
+        penY = y;
+      }
+      free.put(lines);
+    }
+    if (format == Format.GCODE) {
+      buf.put("G0 X0 Y0\nM2\n");
+    } else {
+      buf.put("PU0,0;SP0;\n");
+    }
+    buf.flush();
+    stats.bytes = buf.total;
+  }
+
+  /**
+   *  ASCII writer that formats numbers straight into a ByteBuffer and writes it to a channel when full
+   */
+  private static class Output {
+    private final WritableByteChannel channel;
+    private final ByteBuffer          buf = ByteBuffer.allocateDirect(64 * 1024);
+    private final byte[]              digits = new byte[20];
+    private long                      total;
+
+    Output (WritableByteChannel channel) {
+      this.channel = channel;
+    }
+
+    private void ensure (int bytes) throws IOException {
+      if (buf.remaining() < bytes) {
+        flush();
+      }
+    }
+
+    Output put (char cc) throws IOException {
+      ensure(1);
+      buf.put((byte) cc);
+      return this;
+    }
+
+    Output put (String str) throws IOException {
+      for (int ii = 0; ii < str.length(); ii++) {
+        put(str.charAt(ii));
+      }
+      return this;
+    }
+
+    Output put (long value) throws IOException {
+      ensure(21);
+      if (value < 0) {
+        buf.put((byte) '-');
+        value = -value;
+      }
+      int len = 0;
+      do {
+        digits[len++] = (byte) ('0' + value % 10);
+        value /= 10;
+      } while (value > 0);
+      while (len > 0) {
+        buf.put(digits[--len]);
+      }
+      return this;
+    }
+
+    /**
+     *  Write a value with up to 3 decimals, without trailing zeros
+     */
+    Output put (float value) throws IOException {
+      long thousandths = Math.round(value * 1000.0);
+      if (thousandths < 0) {
+        put('-');
+        thousandths = -thousandths;
+      }
+      put(thousandths / 1000);
+      int frac = (int) (thousandths % 1000);
+      if (frac != 0) {
+        put('.');
+        put((char) ('0' + frac / 100));
+        if ((frac %= 100) != 0) {
+          put((char) ('0' + frac / 10));
+          if ((frac %= 10) != 0) {
+            put((char) ('0' + frac));
+          }
+        }
+      }
+      return this;
+    }
+
+    void flush () throws IOException {
+      buf.flip();
+      total += buf.remaining();
+      while (buf.hasRemaining()) {
+        channel.write(buf);
+      }
+      buf.clear();
+    }
+  }
+
+  /**
+   *  Command line: PlotStream &lt;gcode|hpgl&gt; &lt;family&gt; &lt;input file or -&gt; &lt;output file or -&gt; [name=value ...]
+   *  where the options are size (em height in mm, default 10), wrap (line width in mm, default 0 for no
+   *  wrapping), line (line spacing in mm), align (left, center or right), optimize (true or false), feed
+   *  (mm/min), up and down (G-code pen commands) and depth (queue depth).  Statistics go to stderr.
+   */
+  public static void main (String[] args) {
+    if (args.length < 4) {
+      System.err.println("Usage: PlotStream <gcode|hpgl> <family> <input|-> <output|-> [size=mm] [wrap=mm] [line=mm] " +
+                         "[align=left|center|right] [optimize=true|false] [feed=mm/min] [up=cmd] [down=cmd] [depth=n]");
+      System.exit(1);
+    }
+    try {
+      HersheyFont font = HersheyFont.load();
+      Format format = Format.valueOf(args[0].toUpperCase(Locale.ROOT));
+      double size = 10;
+      for (int ii = 4; ii < args.length; ii++) {
+        if (args[ii].startsWith("size=")) {
+          size = Double.parseDouble(args[ii].substring(5));
+        }
+      }
+      PlotStream plot = new PlotStream(font, args[1], format, size);
+      String up = plot.penUp, down = plot.penDown;
+      for (int ii = 4; ii < args.length; ii++) {
+        int eq = args[ii].indexOf('=');
+        String name = eq > 0 ? args[ii].substring(0, eq) : args[ii];
+        String value = eq > 0 ? args[ii].substring(eq + 1) : "";
+        switch (name) {
+          case "size":
+            break;
+          case "wrap":
+            plot.setWrapWidth(Double.parseDouble(value));
+            break;
+          case "line":
+            plot.setLineSpacing(Double.parseDouble(value));
+            break;
+          case "align":
+            plot.setAlign(HersheyLayout.Align.valueOf(value.toUpperCase(Locale.ROOT)));
+            break;
+          case "optimize":
+            plot.setOptimize(Boolean.parseBoolean(value));
+            break;
+          case "feed":
+            plot.setFeed(Double.parseDouble(value));
+            break;
+          case "up":
+            up = value;
+            break;
+          case "down":
+            down = value;
+            break;
+          case "depth":
+            plot.setQueueDepth(Integer.parseInt(value));
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + args[ii]);
+        }
+      }
+      plot.setPenCommands(up, down);
+      long start = System.nanoTime();
+      Stats stats;
+      try (Reader in = new InputStreamReader("-".equals(args[2]) ? System.in : new FileInputStream(args[2]), StandardCharsets.UTF_8);
+           WritableByteChannel out = "-".equals(args[3]) ? Channels.newChannel(System.out) :
+             FileChannel.open(Paths.get(args[3]), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        stats = plot.run(in, out);
+      }
+      System.err.println(stats + String.format(Locale.ROOT, " in %.2f s", (System.nanoTime() - start) / 1e9));
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ *  Growable, reusable list of polylines stored in primitive arrays.  Polylines are grouped into glyphs
+ *  and glyphs into lines so later stages (pen travel optimization, output writers) can work per glyph
+ *  or per line.  Calling clear() keeps the arrays, so a single instance can be reused for every string
+ *  in a batch without further allocation once it has grown to fit.
+ */
+class Polylines {
+  float[]         xy = new float[256];      // x,y pairs for all points
+  int             points;
+  int[]           start = new int[32];      // Index of first point of each polyline (start[count] == points)
+  int             count;
+  int[]           glyphStart = new int[16]; // Index of first polyline of each glyph
+  int             glyphs;
+  int[]           lineStart = new int[4];   // Index of first glyph of each line
+  int             lines;
+
+  void clear () {
+    points = count = glyphs = lines = 0;
+  }
+
+  void beginLine () {
+    trim();
+    if (lines == lineStart.length) {
+      lineStart = Arrays.copyOf(lineStart, lines * 2);
+    }
+    lineStart[lines++] = glyphs;
+  }
+
+  void beginGlyph () {
+    trim();
+    if (glyphs == glyphStart.length) {
+      glyphStart = Arrays.copyOf(glyphStart, glyphs * 2);
+    }
+    glyphStart[glyphs++] = count;
+  }
+
+  /**
+   *  Start a new polyline.  A previous polyline with only a single point is discarded.
+   */
+  void moveTo (float x, float y) {
+    if (count > 0 && points - start[count - 1] < 2) {
+      points = start[--count];
+    }
+    if (count + 1 >= start.length) {
+      start = Arrays.copyOf(start, start.length * 2);
+    }
+    start[count++] = points;
+    addPoint(x, y);
+  }
+
+  void lineTo (float x, float y) {
+    addPoint(x, y);
+  }
+
+  private void addPoint (float x, float y) {
+    if (points * 2 + 2 > xy.length) {
+      xy = Arrays.copyOf(xy, xy.length * 2);
+    }
+    xy[points * 2] = x;
+    xy[points * 2 + 1] = y;
+    points++;
+    start[count] = points;
+  }
+
+  /**
+   *  Discard a trailing single point polyline left by a final moveTo()
+   */
+  void trim () {
+    if (count > 0 && points - start[count - 1] < 2) {
+      points = start[--count];
+    }
+  }
+
+  int size () {
+    return count;
+  }
+
+  int pointCount (int poly) {
+    return start[poly + 1] - start[poly];
+  }
+
+  float getX (int poly, int pt) {
+    return xy[(start[poly] + pt) * 2];
+  }
+
+  float getY (int poly, int pt) {
+    return xy[(start[poly] + pt) * 2 + 1];
+  }
+}
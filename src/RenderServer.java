@@ -0,0 +1,506 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Headless HTTP service that lays out text and returns it as SVG, PNG or JSON vectors.  It uses only
+ *  the JDK's built in HTTP server and never starts Swing.  Requests run on virtual threads when the
+ *  JVM has them (Java 21 and later) and on a fixed thread pool otherwise.  Responses are kept in an LRU
+ *  cache bounded by total size and keyed by the normalized request, so repeated labels are served
+ *  without laying them out again.  Endpoints:
+ *  <pre>
+ *    /svg, /png, /json   text=...  family=Roman Simplex  size=32  stroke=size/16  wrap=0  align=left  kern=false
+ *    /stats              request, cache hit and latency counters for each endpoint, as JSON
+ *  </pre>
+ *  size is the height of the 32 unit Hershey em in output units (pixels for PNG), wrap is a maximum
+ *  line width in output units (0 breaks lines only at newlines), align is left, center or right and kern
+ *  applies the family's automatic kerning table.  PNG images are limited to MAX_PIXELS pixels.
+ *  The text can also be sent as the body of a POST request.
+ */
+class RenderServer {
+  private static final int          MAX_TEXT = 4096;
+  private static final long         MAX_PIXELS = 16 << 20;      // Largest PNG image, in pixels
+  private final HersheyFont         font;
+  private final HttpServer          server;
+  private final ExecutorService     executor;
+  private final String              threading;
+  private final Map<String,Endpoint> endpoints = new LinkedHashMap<>();
+  private final Map<String,HersheyLayout> layouts = new ConcurrentHashMap<>();    // By family and kerning
+  private final long                started = System.nanoTime();
+  // Response cache, bounded by total body size
+  private final long                cacheLimit;
+  private long                      cacheBytes;
+  private final LinkedHashMap<String,Response> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+  /**
+   *  Cached response body
+   */
+  private static class Response {
+    private final byte[] body;
+    private final String type;
+
+    Response (byte[] body, String type) {
+      this.body = body;
+      this.type = type;
+    }
+  }
+
+  /**
+   *  Parsed and normalized request parameters
+   */
+  private static class Request {
+    private String              family = "Roman Simplex";
+    private String              text = "";
+    private double              size = 32, stroke, wrap;
+    private HersheyLayout.Align align = HersheyLayout.Align.LEFT;
+    private boolean             kern;
+
+    /**
+     *  Cache key: the same request always gives the same key however its parameters were written
+     */
+    String getKey (String endpoint) {
+      return endpoint + '\u0000' + family + '\u0000' + size + '\u0000' + stroke + '\u0000' + wrap + '\u0000' + align +
+             '\u0000' + kern + '\u0000' + text;
+    }
+  }
+
+  /**
+   *  Handler for one output format, with its own counters
+   */
+  private abstract class Endpoint {
+    private final String      name, type;
+    private final LongAdder   requests = new LongAdder(), hits = new LongAdder(), errors = new LongAdder();
+    private final LongAdder   bytes = new LongAdder(), nanos = new LongAdder();
+    private final AtomicLong  maxNanos = new AtomicLong();
+
+    Endpoint (String name, String type) {
+      this.name = name;
+      this.type = type;
+    }
+
+    abstract byte[] render (Request req, Polylines lines, Rectangle bounds) throws IOException;
+
+    private void handle (HttpExchange exchange) throws IOException {
+      long start = System.nanoTime();
+      try {
+        Request req = parse(exchange);
+        String key = req.getKey(name);
+        Response rsp = getCached(key);
+        if (rsp != null) {
+          hits.increment();
+        } else {
+          Polylines lines = new Polylines();
+          Rectangle bounds = layout(req, lines);
+          rsp = new Response(render(req, lines, bounds), type);
+          putCached(key, rsp);
+        }
+        send(exchange, 200, rsp.type, rsp.body);
+        bytes.add(rsp.body.length);
+      } catch (IllegalArgumentException ex) {
+        errors.increment();
+        send(exchange, 400, "text/plain; charset=utf-8", (ex.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+      } catch (RuntimeException | OutOfMemoryError ex) {
+        // Answer rather than dropping the exchange, whatever went wrong while rendering
+        ex.printStackTrace();
+        errors.increment();
+        send(exchange, 500, "text/plain; charset=utf-8", "Internal error\n".getBytes(StandardCharsets.UTF_8));
+      } finally {
+        long time = System.nanoTime() - start;
+        requests.increment();
+        nanos.add(time);
+        maxNanos.accumulateAndGet(time, Math::max);
+      }
+    }
+
+    private void appendStats (StringBuilder buf, double seconds) {
+      long count = requests.sum();
+      buf.append("\"").append(name).append("\":{\"requests\":").append(count)
+         .append(",\"cacheHits\":").append(hits.sum())
+         .append(",\"errors\":").append(errors.sum())
+         .append(",\"bytes\":").append(bytes.sum())
+         .append(",\"meanMillis\":").append(String.format(Locale.ROOT, "%.4f", count > 0 ? nanos.sum() / 1e6 / count : 0.0))
+         .append(",\"maxMillis\":").append(String.format(Locale.ROOT, "%.4f", maxNanos.get() / 1e6))
+         .append(",\"requestsPerSecond\":").append(String.format(Locale.ROOT, "%.1f", count / seconds))
+         .append("}");
+    }
+  }
+
+  /**
+   *  @param font glyph source
+   *  @param port TCP port (0 picks a free port)
+   *  @param cacheLimit maximum total size of cached responses, in bytes
+   */
+  RenderServer (HersheyFont font, int port, long cacheLimit) throws IOException {
+    this.font = font;
+    this.cacheLimit = cacheLimit;
+    ExecutorService virtual = null;
+    try {
+      virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException ex) {
+      // Virtual threads need Java 21
+    }
+    if (virtual != null) {
+      executor = virtual;
+      threading = "virtual threads";
+    } else {
+      int threads = Runtime.getRuntime().availableProcessors() * 4;
+      executor = Executors.newFixedThreadPool(threads, r -> {
+        Thread thread = new Thread(r, "RenderServer");
+        thread.setDaemon(true);
+        return thread;
+      });
+      threading = threads + " pooled threads";
+    }
+    // Without TCP_NODELAY, small responses on keep-alive connections stall waiting for delayed ACKs
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    server = HttpServer.create(new InetSocketAddress(port), 1024);
+    server.setExecutor(executor);
+    addEndpoint(new Endpoint("svg", "image/svg+xml") {
+      byte[] render (Request req, Polylines lines, Rectangle bounds) {
+        return toSvg(req, lines, bounds);
+      }
+    });
+    addEndpoint(new Endpoint("png", "image/png") {
+      byte[] render (Request req, Polylines lines, Rectangle bounds) throws IOException {
+        return toPng(req, lines, bounds);
+      }
+    });
+    addEndpoint(new Endpoint("json", "application/json") {
+      byte[] render (Request req, Polylines lines, Rectangle bounds) {
+        return toJson(req, lines, bounds);
+      }
+    });
+    server.createContext("/stats", exchange -> {
+      try {
+        send(exchange, 200, "application/json", getStats().getBytes(StandardCharsets.UTF_8));
+      } finally {
+        exchange.close();
+      }
+    });
+  }
+
+  private void addEndpoint (Endpoint endpoint) {
+    endpoints.put(endpoint.name, endpoint);
+    server.createContext("/" + endpoint.name, exchange -> {
+      try {
+        endpoint.handle(exchange);
+      } catch (IOException | RuntimeException ex) {
+        ex.printStackTrace();
+        send(exchange, 500, "text/plain; charset=utf-8", "Internal error\n".getBytes(StandardCharsets.UTF_8));
+      } finally {
+        exchange.close();
+      }
+    });
+  }
+
+  void start () {
+    server.start();
+  }
+
+  void stop () {
+    server.stop(0);
+    executor.shutdown();
+  }
+
+  int getPort () {
+    return server.getAddress().getPort();
+  }
+
+  String getThreading () {
+    return threading;
+  }
+
+  private Response getCached (String key) {
+    synchronized (cache) {
+      return cache.get(key);
+    }
+  }
+
+  private void putCached (String key, Response rsp) {
+    if (rsp.body.length > cacheLimit / 4) {
+      return;
+    }
+    synchronized (cache) {
+      Response old = cache.put(key, rsp);
+      cacheBytes += rsp.body.length - (old != null ? old.body.length : 0);
+      Iterator<Response> it = cache.values().iterator();
+      while (cacheBytes > cacheLimit && it.hasNext()) {
+        cacheBytes -= it.next().body.length;
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   *  Get counters for all endpoints and the cache as JSON
+   */
+  String getStats () {
+    double seconds = Math.max((System.nanoTime() - started) / 1e9, 1e-3);
+    StringBuilder buf = new StringBuilder("{\"uptimeSeconds\":").append(String.format(Locale.ROOT, "%.1f", seconds));
+    buf.append(",\"threading\":\"").append(threading).append("\"");
+    synchronized (cache) {
+      buf.append(",\"cache\":{\"entries\":").append(cache.size()).append(",\"bytes\":").append(cacheBytes)
+         .append(",\"limit\":").append(cacheLimit).append("}");
+    }
+    buf.append(",\"endpoints\":{");
+    boolean first = true;
+    for (Endpoint endpoint : endpoints.values()) {
+      if (!first) {
+        buf.append(',');
+      }
+      endpoint.appendStats(buf, seconds);
+      first = false;
+    }
+    return buf.append("}}\n").toString();
+  }
+
+  private static void send (HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", type);
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private Request parse (HttpExchange exchange) throws IOException {
+    Request req = new Request();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query != null) {
+      for (String param : query.split("&")) {
+        int eq = param.indexOf('=');
+        String name = URLDecoder.decode(eq >= 0 ? param.substring(0, eq) : param, "UTF-8");
+        String value = eq >= 0 ? URLDecoder.decode(param.substring(eq + 1), "UTF-8") : "";
+        switch (name) {
+          case "text":
+            req.text = value;
+            break;
+          case "family":
+            req.family = value;
+            break;
+          case "size":
+            req.size = parseNumber(name, value, 1, 2048);
+            break;
+          case "stroke":
+            req.stroke = parseNumber(name, value, 0.01, 256);
+            break;
+          case "wrap":
+            req.wrap = parseNumber(name, value, 0, 1e6);
+            break;
+          case "align":
+            try {
+              req.align = HersheyLayout.Align.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+              throw new IllegalArgumentException("align must be left, center or right");
+            }
+            break;
+          case "kern":
+            req.kern = value.isEmpty() || Boolean.parseBoolean(value);
+            break;
+          default:
+            break;
+        }
+      }
+    }
+    if ("POST".equals(exchange.getRequestMethod())) {
+      try (InputStream in = exchange.getRequestBody()) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] tmp = new byte[1024];
+        int len;
+        while ((len = in.read(tmp)) > 0 && buf.size() <= MAX_TEXT * 4) {
+          buf.write(tmp, 0, len);
+        }
+        req.text = new String(buf.toByteArray(), StandardCharsets.UTF_8);
+      }
+    }
+    if (req.text.length() > MAX_TEXT) {
+      throw new IllegalArgumentException("text is limited to " + MAX_TEXT + " characters");
+    }
+    if (!font.getFamilies().containsKey(req.family)) {
+      throw new IllegalArgumentException("Unknown family: " + req.family);
+    }
+    if (req.stroke == 0) {
+      req.stroke = Math.max(1, req.size / 16);
+    }
+    return req;
+  }
+
+  private static double parseNumber (String name, String value, double min, double max) {
+    try {
+      double num = Double.parseDouble(value);
+      if (num >= min && num <= max) {
+        return num;
+      }
+    } catch (NumberFormatException ex) {
+      // Reported below
+    }
+    throw new IllegalArgumentException(name + " must be a number from " + min + " to " + max);
+  }
+
+  /**
+   *  Lay out the request's text and get the bounds of the result (at least the nominal em box of each
+   *  line), padded by the stroke width so thick strokes aren't clipped
+   */
+  private Rectangle layout (Request req, Polylines lines) {
+    HersheyLayout base = layouts.computeIfAbsent(req.family + (req.kern ? "\u0000kern" : ""), key ->
+      new HersheyLayout(font, req.family).setKerning(req.kern ? GlyphMetrics.get(font).getKerning(req.family) : null));
+    HersheyLayout layout = new HersheyLayout(base)
+      .setScale(req.size / 32)
+      .setWrapWidth(req.wrap)
+      .setAlign(req.align);
+    int count = layout.layout(req.text, lines);
+    double half = req.size / 2;
+    double minX = 0, maxX = layout.measure(req.text), minY = -half, maxY = (count - 1) * layout.getLineHeight() * layout.getScale() + half;
+    if (req.wrap > 0) {
+      maxX = Math.max(maxX, req.wrap);
+    }
+    for (int ii = 0; ii < lines.points; ii++) {
+      minX = Math.min(minX, lines.xy[ii * 2]);
+      maxX = Math.max(maxX, lines.xy[ii * 2]);
+      minY = Math.min(minY, lines.xy[ii * 2 + 1]);
+      maxY = Math.max(maxY, lines.xy[ii * 2 + 1]);
+    }
+    double pad = req.stroke;
+    int x = (int) Math.floor(minX - pad);
+    int y = (int) Math.floor(minY - pad);
+    return new Rectangle(x, y, (int) Math.ceil(maxX + pad) - x, (int) Math.ceil(maxY + pad) - y);
+  }
+
+  private static byte[] toSvg (Request req, Polylines lines, Rectangle bounds) {
+    StringBuilder buf = new StringBuilder(256 + lines.points * 12);
+    buf.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(bounds.width)
+       .append("\" height=\"").append(bounds.height)
+       .append("\" viewBox=\"").append(bounds.x).append(' ').append(bounds.y).append(' ').append(bounds.width).append(' ')
+       .append(bounds.height).append("\">\n<path fill=\"none\" stroke=\"black\" stroke-linecap=\"round\" stroke-linejoin=\"round\"")
+       .append(" stroke-width=\"").append(format(req.stroke)).append("\" d=\"");
+    for (int poly = 0; poly < lines.size(); poly++) {
+      for (int pt = 0; pt < lines.pointCount(poly); pt++) {
+        buf.append(pt == 0 ? (poly == 0 ? "M" : " M") : " L").append(format(lines.getX(poly, pt))).append(' ')
+           .append(format(lines.getY(poly, pt)));
+      }
+    }
+    buf.append("\"/>\n</svg>\n");
+    return buf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] toPng (Request req, Polylines lines, Rectangle bounds) throws IOException {
+    if ((long) bounds.width * bounds.height > MAX_PIXELS) {
+      throw new IllegalArgumentException("Image would be " + bounds.width + " x " + bounds.height + " pixels, more than the " +
+                                         MAX_PIXELS + " pixel limit");
+    }
+    BufferedImage img = new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height), BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D g2 = img.createGraphics();
+    g2.setColor(Color.white);
+    g2.fillRect(0, 0, img.getWidth(), img.getHeight());
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+    g2.translate(-bounds.x, -bounds.y);
+    g2.setColor(Color.black);
+    g2.setStroke(new BasicStroke((float) req.stroke, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+    Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, lines.points);
+    for (int poly = 0; poly < lines.size(); poly++) {
+      path.moveTo(lines.getX(poly, 0), lines.getY(poly, 0));
+      for (int pt = 1; pt < lines.pointCount(poly); pt++) {
+        path.lineTo(lines.getX(poly, pt), lines.getY(poly, pt));
+      }
+    }
+    g2.draw(path);
+    g2.dispose();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+    ImageIO.write(img, "png", out);
+    return out.toByteArray();
+  }
+
+  /**
+   *  Append a JSON string literal
+   */
+  private static void appendString (StringBuilder buf, String str) {
+    buf.append('"');
+    for (int ii = 0; ii < str.length(); ii++) {
+      char cc = str.charAt(ii);
+      if (cc == '"' || cc == '\\') {
+        buf.append('\\').append(cc);
+      } else if (cc < 0x20) {
+        buf.append(String.format("\\u%04x", (int) cc));
+      } else {
+        buf.append(cc);
+      }
+    }
+    buf.append('"');
+  }
+
+  /**
+   *  JSON vectors: the bounds, then one array per line of text, holding one array per glyph, holding
+   *  one flat x,y,x,y... array per polyline
+   */
+  private static byte[] toJson (Request req, Polylines lines, Rectangle bounds) {
+    StringBuilder buf = new StringBuilder(256 + lines.points * 12);
+    buf.append("{\"family\":");
+    appendString(buf, req.family);
+    buf.append(",\"size\":").append(format(req.size))
+       .append(",\"stroke\":").append(format(req.stroke))
+       .append(",\"bounds\":[").append(bounds.x).append(',').append(bounds.y).append(',').append(bounds.width).append(',')
+       .append(bounds.height).append("],\"lines\":[");
+    for (int line = 0; line < lines.lines; line++) {
+      buf.append(line > 0 ? ",[" : "[");
+      int gLast = line + 1 < lines.lines ? lines.lineStart[line + 1] : lines.glyphs;
+      for (int glyph = lines.lineStart[line]; glyph < gLast; glyph++) {
+        buf.append(glyph > lines.lineStart[line] ? ",[" : "[");
+        int pLast = glyph + 1 < lines.glyphs ? lines.glyphStart[glyph + 1] : lines.size();
+        for (int poly = lines.glyphStart[glyph]; poly < pLast; poly++) {
+          buf.append(poly > lines.glyphStart[glyph] ? ",[" : "[");
+          for (int pt = 0; pt < lines.pointCount(poly); pt++) {
+            buf.append(pt > 0 ? "," : "").append(format(lines.getX(poly, pt))).append(',').append(format(lines.getY(poly, pt)));
+          }
+          buf.append(']');
+        }
+        buf.append(']');
+      }
+      buf.append(']');
+    }
+    buf.append("]}\n");
+    return buf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   *  Format a coordinate with at most 3 decimals and no trailing zeros
+   */
+  private static String format (double value) {
+    long rounded = Math.round(value * 1000);
+    if (rounded % 1000 == 0) {
+      return Long.toString(rounded / 1000);
+    }
+    String str = String.format(Locale.ROOT, "%.3f", rounded / 1000.0);
+    int end = str.length();
+    while (str.charAt(end - 1) == '0') {
+      end--;
+    }
+    return str.substring(0, end);
+  }
+
+  /**
+   *  Run until the process is stopped
+   */
+  void awaitTermination () throws InterruptedException {
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+  }
+}
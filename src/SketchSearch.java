@@ -0,0 +1,205 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ *  Search by shape.  Draw a rough glyph on the sketch pad, or load the glyph selected in the main view,
+ *  and the most similar glyphs from all families are shown (most similar first).  Click a result to
+ *  select it in the main view.
+ */
+class SketchSearch {
+  private static final int  RESULTS = 24;
+  private static final int  ICON_SIZE = 48;
+  private final HersheyFont font;
+  private final GlyphIndex  index;
+  private final IntConsumer onSelect;
+  private final SketchPad   pad = new SketchPad();
+  private final JPanel      results = new JPanel(new GridLayout(0, 6, 2, 2));
+  private final JLabel      status = new JLabel(" ");
+
+  private SketchSearch (HersheyFont font, GlyphIndex index, IntConsumer onSelect) {
+    this.font = font;
+    this.index = index;
+    this.onSelect = onSelect;
+  }
+
+  /**
+   *  Describe a glyph by its code and, if it has one, its family and ASCII character
+   */
+  static String describe (HersheyFont font, int glyph) {
+    int code = font.getCode(glyph);
+    String family = font.getFamily(code);
+    int asc = font.getAscii(code);
+    return "Code: " + code + (family != null ? " (" + family + " '" + (char) asc + "')" : "");
+  }
+
+  /**
+   *  Drawing area that records mouse strokes into a sketch, and runs a search after each stroke
+   */
+  private class SketchPad extends JComponent {
+    private final GlyphIndex.Sketch sketch = new GlyphIndex.Sketch();
+    private Path2D.Double           path = new Path2D.Double();
+
+    SketchPad () {
+      setPreferredSize(new Dimension(240, 240));
+      setToolTipText("Draw a glyph here");
+      MouseAdapter mouse = new MouseAdapter() {
+        @Override
+        public void mousePressed (MouseEvent ev) {
+          sketch.moveTo(ev.getX(), ev.getY());
+          path.moveTo(ev.getX(), ev.getY());
+        }
+
+        @Override
+        public void mouseDragged (MouseEvent ev) {
+          sketch.lineTo(ev.getX(), ev.getY());
+          path.lineTo(ev.getX(), ev.getY());
+          repaint();
+        }
+
+        @Override
+        public void mouseReleased (MouseEvent ev) {
+          if (!sketch.isEmpty()) {
+            long start = System.nanoTime();
+            showResults(index.findSimilar(sketch, RESULTS), System.nanoTime() - start);
+          }
+        }
+      };
+      addMouseListener(mouse);
+      addMouseMotionListener(mouse);
+    }
+
+    void clear () {
+      sketch.clear();
+      path = new Path2D.Double();
+      repaint();
+    }
+
+    /**
+     *  Replace the sketch with a glyph, scaled to fit the pad.  The glyph's strokes become part of the
+     *  sketch, so strokes drawn afterwards search for the glyph with the additions.
+     */
+    void setGlyph (int glyph) {
+      clear();
+      Path2D.Double glyphPath = font.getPath(glyph);
+      Rectangle2D bnds = glyphPath.getBounds2D();
+      double scale = (getWidth() - 40) / Math.max(Math.max(bnds.getWidth(), bnds.getHeight()), 1);
+      AffineTransform at = AffineTransform.getTranslateInstance(getWidth() / 2.0, getHeight() / 2.0);
+      at.scale(scale, scale);
+      at.translate(-bnds.getCenterX(), -bnds.getCenterY());
+      double[] pt = new double[6];
+      for (PathIterator it = glyphPath.getPathIterator(at); !it.isDone(); it.next()) {
+        int x, y;
+        if (it.currentSegment(pt) == PathIterator.SEG_MOVETO) {
+          sketch.moveTo(x = (int) Math.round(pt[0]), y = (int) Math.round(pt[1]));
+          path.moveTo(x, y);
+        } else {
+          sketch.lineTo(x = (int) Math.round(pt[0]), y = (int) Math.round(pt[1]));
+          path.lineTo(x, y);
+        }
+      }
+      repaint();
+    }
+
+    @Override
+    protected void paintComponent (Graphics g) {
+      Graphics2D g2 = (Graphics2D) g;
+      g2.setColor(Color.white);
+      g2.fillRect(0, 0, getWidth(), getHeight());
+      g2.setColor(Color.lightGray);
+      g2.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
+      g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g2.setColor(Color.black);
+      g2.setStroke(new BasicStroke(3.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+      g2.draw(path);
+    }
+  }
+
+  private void showResults (int[] glyphs, long nanos) {
+    results.removeAll();
+    for (int gdx : glyphs) {
+      JButton button = new JButton(new ImageIcon(renderIcon(gdx)));
+      button.setMargin(new Insets(0, 0, 0, 0));
+      button.setToolTipText(describe(font, gdx));
+      button.addActionListener(ev -> onSelect.accept(font.getCode(gdx)));
+      results.add(button);
+    }
+    status.setText(String.format("%d matches in %.2f ms", glyphs.length, nanos / 1e6));
+    results.revalidate();
+    results.repaint();
+  }
+
+  /**
+   *  Render a glyph scaled to fit a result icon
+   */
+  private BufferedImage renderIcon (int glyph) {
+    BufferedImage img = new BufferedImage(ICON_SIZE, ICON_SIZE, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2 = img.createGraphics();
+    g2.setColor(Color.white);
+    g2.fillRect(0, 0, ICON_SIZE, ICON_SIZE);
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g2.setColor(Color.darkGray);
+    Rectangle2D bnds = GlyphMetrics.get(font).getBounds(glyph);
+    double scale = Math.min(1.5, (ICON_SIZE - 8) / Math.max(Math.max(bnds.getWidth(), bnds.getHeight()), 1));
+    Path2D.Double path = GlyphDetail.get(font).getPath(glyph, scale);
+    AffineTransform at = AffineTransform.getTranslateInstance(ICON_SIZE / 2.0, ICON_SIZE / 2.0);
+    at.scale(scale, scale);
+    at.translate(-bnds.getCenterX(), -bnds.getCenterY());
+    g2.draw(at.createTransformedShape(path));
+    g2.dispose();
+    return img;
+  }
+
+  /**
+   *  Show the search window.  Glyphs are passed in and out by Hershey code, as the main view's font may
+   *  be replaced (say, by a reload) while the window is open.
+   *  @param current supplies the code of the glyph selected in the main view
+   *  @param onSelect called with a glyph's code when a result is clicked
+   */
+  static void showSearch (Frame owner, HersheyFont font, GlyphIndex index, IntSupplier current, IntConsumer onSelect) {
+    SketchSearch search = new SketchSearch(font, index, onSelect);
+    JDialog dialog = new JDialog(owner, "Search by Shape", Dialog.ModalityType.MODELESS);
+    JPanel left = new JPanel(new BorderLayout());
+    left.add(search.pad, BorderLayout.CENTER);
+    JPanel buttons = new JPanel();
+    JButton clear = new JButton("Clear");
+    clear.addActionListener(ev -> {
+      search.pad.clear();
+      search.showResults(new int[0], 0);
+    });
+    buttons.add(clear);
+    JButton glyph = new JButton("Current Glyph");
+    glyph.setToolTipText("Find glyphs shaped like the one selected in the main window");
+    glyph.addActionListener(ev -> {
+      int gdx = font.indexOf(current.getAsInt());
+      if (gdx < 0) {
+        search.status.setText("The current glyph isn't in this window's font");
+        return;
+      }
+      search.pad.setGlyph(gdx);
+      long start = System.nanoTime();
+      search.showResults(index.findSimilar(gdx, RESULTS), System.nanoTime() - start);
+    });
+    buttons.add(glyph);
+    left.add(buttons, BorderLayout.SOUTH);
+    JPanel right = new JPanel(new BorderLayout());
+    JPanel top = new JPanel(new BorderLayout());
+    top.add(search.results, BorderLayout.NORTH);
+    right.add(top, BorderLayout.CENTER);
+    right.add(search.status, BorderLayout.SOUTH);
+    right.setPreferredSize(new Dimension(6 * (ICON_SIZE + 8), 240));
+    dialog.add(left, BorderLayout.WEST);
+    dialog.add(right, BorderLayout.CENTER);
+    dialog.pack();
+    dialog.setLocationRelativeTo(owner);
+    dialog.setVisible(true);
+  }
+}